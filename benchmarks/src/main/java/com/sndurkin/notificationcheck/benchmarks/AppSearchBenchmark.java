@@ -0,0 +1,55 @@
+package com.sndurkin.notificationcheck.benchmarks;
+
+import com.sndurkin.notificationcheck.core.AppSearchIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Measures building the application picker's search index and typing a query into it
+// one character at a time.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AppSearchBenchmark {
+
+    private static final String QUERY = "messenger ma";
+
+    @Param({ "100", "1000", "10000" })
+    public int appCount;
+
+    private String[] labels;
+    private String[] packageNames;
+    private AppSearchIndex index;
+
+    @Setup
+    public void setup() {
+        labels = Catalogs.labels(appCount);
+        packageNames = Catalogs.packageNames(appCount);
+        index = buildIndex();
+    }
+
+    @Benchmark
+    public AppSearchIndex buildIndex() {
+        return new AppSearchIndex(Arrays.asList(labels), Arrays.asList(packageNames));
+    }
+
+    @Benchmark
+    public int typeQuery() {
+        int matches = 0;
+        for(int i = 0; i <= QUERY.length(); ++i) {
+            int[] result = index.search(QUERY.substring(0, i));
+            matches += result != null ? result.length : 0;
+        }
+        return matches;
+    }
+
+}
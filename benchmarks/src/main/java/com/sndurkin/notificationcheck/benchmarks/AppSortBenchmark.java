@@ -0,0 +1,68 @@
+package com.sndurkin.notificationcheck.benchmarks;
+
+import com.sndurkin.notificationcheck.core.App;
+import com.sndurkin.notificationcheck.core.AppSorter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+// Measures the duplicate-name disambiguation and sorting done once the application
+// picker's list is fully loaded, as updateEntries() does.
+//
+// Sorting changes the names, so every sort needs a fresh list. Each invocation sorts a
+// batch of them, so setting them up doesn't dwarf the smaller sorts.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AppSortBenchmark {
+
+    private static final int SORTS_PER_INVOCATION = 16;
+
+    @Param({ "100", "1000", "10000" })
+    public int appCount;
+
+    private String[] labels;
+    private String[] packageNames;
+    private final List<List<App>> batch = new ArrayList<List<App>>(SORTS_PER_INVOCATION);
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        labels = Catalogs.labels(appCount);
+        packageNames = Catalogs.packageNames(appCount);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        batch.clear();
+        for(int j = 0; j < SORTS_PER_INVOCATION; ++j) {
+            List<App> apps = new ArrayList<App>(appCount);
+            for(int i = 0; i < appCount; ++i) {
+                apps.add(new App(labels[i], packageNames[i], i % 20 == 0));
+            }
+            batch.add(apps);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SORTS_PER_INVOCATION)
+    public List<List<App>> sort() {
+        for(List<App> apps : batch) {
+            AppSorter.sort(apps, Locale.ENGLISH);
+        }
+        return batch;
+    }
+
+}
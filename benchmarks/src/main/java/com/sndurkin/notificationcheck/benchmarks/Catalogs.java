@@ -0,0 +1,40 @@
+package com.sndurkin.notificationcheck.benchmarks;
+
+import java.util.Random;
+
+// Generates synthetic application catalogs for the benchmarks. The same size always
+// produces the same catalog.
+final class Catalogs {
+
+    private static final String[] WORDS = {
+        "Maps", "mail", "Camera", "Éditeur", "photos", "Music", "Notes", "clock", "Calendar",
+        "Ökonomie", "Weather", "chat", "Messenger", "Browser", "files", "Keyboard", "Wallet"
+    };
+
+    private Catalogs() {
+    }
+
+    static String[] packageNames(int size) {
+        String[] packageNames = new String[size];
+        for(int i = 0; i < size; ++i) {
+            packageNames[i] = "com.example.vendor" + (i % 97) + ".app" + i;
+        }
+        return packageNames;
+    }
+
+    // Roughly one label in ten is a duplicate of another one.
+    static String[] labels(int size) {
+        Random random = new Random(size);
+        String[] labels = new String[size];
+        for(int i = 0; i < size; ++i) {
+            if(i > 0 && random.nextInt(10) == 0) {
+                labels[i] = labels[random.nextInt(i)];
+            }
+            else {
+                labels[i] = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+            }
+        }
+        return labels;
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.sndurkin.notificationcheck.benchmarks;
+
+import com.sndurkin.notificationcheck.core.AppRule;
+import com.sndurkin.notificationcheck.core.NotificationTracker;
+import com.sndurkin.notificationcheck.core.PackageIds;
+import com.sndurkin.notificationcheck.core.RuleTable;
+import com.sndurkin.notificationcheck.core.WhatToCheck;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+// Measures how many notification events per second NotificationTracker can take in, as
+// NotificationService hands them over, with the consumer draining inline whenever it's asked to.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EventIngestionBenchmark {
+
+    // The number of distinct packages sending notifications.
+    @Param({ "4", "200" })
+    public int packageCount;
+
+    @Param({ "ALL_NOTIFICATIONS", "ONLY_SELECTED_NOTIFICATIONS" })
+    public WhatToCheck whatToCheck;
+
+    private NotificationTracker tracker;
+    private RuleTable rules;
+    private int[] packageIds;
+    private int next;
+    private long eventTime;
+
+    @Setup
+    public void setup() {
+        tracker = new NotificationTracker();
+        String[] packageNames = Catalogs.packageNames(packageCount);
+        rules = RuleTable.compile(new PackageIds(), whatToCheck, Arrays.copyOf(packageNames, packageCount / 2),
+                                  AppRule.INCLUDE, Collections.<String, AppRule>emptyMap());
+        packageIds = new int[packageCount];
+        for(int i = 0; i < packageCount; ++i) {
+            packageIds[i] = rules.getPackageIds().intern(packageNames[i]);
+        }
+    }
+
+    @Benchmark
+    public int addEvent() {
+        int packageId = packageIds[next];
+        next = next + 1 == packageIds.length ? 0 : next + 1;
+        if(tracker.addEvent(packageId, eventTime += 1000, rules)) {
+            tracker.drain();
+        }
+        return tracker.getPendingPriority(tracker.getGeneration());
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.sndurkin.notificationcheck.benchmarks;
+
+import com.sndurkin.notificationcheck.core.EventJournal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Measures what journaling a notification event costs, including the periodic compaction.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JournalAppendBenchmark {
+
+    private File file;
+    private EventJournal journal;
+    private String[] packageNames;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        file = File.createTempFile("journal", ".bin");
+        journal = EventJournal.open(file, 0);
+        packageNames = Catalogs.packageNames(20);
+    }
+
+    @TearDown
+    public void tearDown() {
+        journal.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public void append() {
+        journal.append(packageNames[next], next);
+        next = next + 1 == packageNames.length ? 0 : next + 1;
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.sndurkin.notificationcheck.benchmarks;
+
+import com.sndurkin.notificationcheck.core.PackageListCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Measures reading the pref_notifications preference, in the current format and in the
+// original '|'-separated one, against the original regex-based extractListFromPref().
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PackageListParsingBenchmark {
+
+    // The number of selected applications.
+    @Param({ "100", "1000", "10000" })
+    public int selectedCount;
+
+    private String value;
+    private String legacyValue;
+
+    @Setup
+    public void setup() {
+        List<String> packageNames = Arrays.asList(Catalogs.packageNames(selectedCount));
+        value = PackageListCodec.encode(packageNames);
+
+        StringBuilder sb = new StringBuilder();
+        for(String packageName : packageNames) {
+            if(sb.length() > 0) {
+                sb.append('|');
+            }
+            sb.append(packageName);
+        }
+        legacyValue = sb.toString();
+    }
+
+    @Benchmark
+    public String[] decode() {
+        return PackageListCodec.decode(value);
+    }
+
+    @Benchmark
+    public int count() {
+        return PackageListCodec.count(value);
+    }
+
+    @Benchmark
+    public String[] decodeLegacyFormat() {
+        return PackageListCodec.decode(legacyValue);
+    }
+
+    @Benchmark
+    public List<String> extractListFromPref() {
+        return Arrays.asList(legacyValue.split("\\|"));
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.sndurkin.notificationcheck.benchmarks;
+
+import com.sndurkin.notificationcheck.core.AppRule;
+import com.sndurkin.notificationcheck.core.NotificationTracker;
+import com.sndurkin.notificationcheck.core.PackageIds;
+import com.sndurkin.notificationcheck.core.RuleTable;
+import com.sndurkin.notificationcheck.core.WhatToCheck;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Measures the work left for SCREEN_ON once notifications have piled up while the screen
+// was off, against the original approach of scanning every buffered package name against
+// the list of selected ones. With ALL_BUT_SELECTED_NOTIFICATIONS, every event is checked
+// and the rules have a minimum interval and quiet hours, so SCREEN_ON has to probe the
+// rule of each distinct package.
+//
+// A single decision only takes nanoseconds, so each invocation decides a batch of
+// sessions, which are filled up again between invocations.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ScreenOnDecisionBenchmark {
+
+    private static final int SESSIONS_PER_INVOCATION = 64;
+
+    // The number of notification events received while the screen was off.
+    @Param({ "10", "1000" })
+    public int eventCount;
+
+    // The number of selected applications.
+    @Param({ "100", "1000", "10000" })
+    public int selectedCount;
+
+    @Param({ "ONLY_SELECTED_NOTIFICATIONS", "ALL_BUT_SELECTED_NOTIFICATIONS" })
+    public WhatToCheck whatToCheck;
+
+    private RuleTable rules;
+    private int[] eventPackageIds;
+    private List<String> legacyEventPackages;
+    private List<String> legacySelectedPackages;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        String[] packageNames = Catalogs.packageNames(selectedCount * 2);
+        legacySelectedPackages = Arrays.asList(Arrays.copyOf(packageNames, selectedCount));
+
+        AppRule baseRule = new AppRule(true, AppRule.PRIORITY_NORMAL, 60 * 1000, 0, 1);
+        rules = RuleTable.compile(new PackageIds(), whatToCheck, legacySelectedPackages.toArray(new String[0]),
+                                  baseRule, Collections.<String, AppRule>emptyMap());
+
+        legacyEventPackages = new ArrayList<String>(eventCount);
+        eventPackageIds = new int[eventCount];
+        for(int i = 0; i < eventCount; ++i) {
+            // None of these are selected, so every selected package has to be looked at.
+            legacyEventPackages.add(packageNames[selectedCount + i % selectedCount]);
+            eventPackageIds[i] = rules.getPackageIds().intern(legacyEventPackages.get(i));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SESSIONS_PER_INVOCATION)
+    public int decide(Sessions sessions) {
+        int result = 0;
+        for(NotificationTracker tracker : sessions.trackers) {
+            int generation = tracker.getGeneration();
+            tracker.drain();
+            result += tracker.decide(generation, rules, eventCount, 12 * 60);
+            tracker.endSession(generation);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public boolean decideLegacy() {
+        boolean vibrate = false;
+        for(String packageName : legacyEventPackages) {
+            if(legacySelectedPackages.contains(packageName)) {
+                vibrate = true;
+            }
+        }
+        return vibrate;
+    }
+
+    // The trackers decided on by one invocation, each holding a session's worth of events.
+    @State(Scope.Thread)
+    public static class Sessions {
+
+        private final NotificationTracker[] trackers = new NotificationTracker[SESSIONS_PER_INVOCATION];
+
+        @Setup(Level.Trial)
+        public void setupTrial() {
+            for(int i = 0; i < trackers.length; ++i) {
+                trackers[i] = new NotificationTracker();
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void setupInvocation(ScreenOnDecisionBenchmark benchmark) {
+            for(NotificationTracker tracker : trackers) {
+                for(int i = 0; i < benchmark.eventPackageIds.length; ++i) {
+                    if(tracker.addEvent(benchmark.eventPackageIds[i], i, benchmark.rules)) {
+                        tracker.drain();
+                    }
+                }
+            }
+        }
+
+    }
+
+}
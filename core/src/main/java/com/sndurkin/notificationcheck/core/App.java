@@ -0,0 +1,20 @@
+package com.sndurkin.notificationcheck.core;
+
+import java.text.CollationKey;
+
+// An installed application as it's listed in the application picker.
+public class App {
+    // The name shown in the list, which is the label unless another application has the same one.
+    public String name;
+    public final String label;
+    public String packageName;
+    public boolean selected;
+    public CollationKey sortKey;
+
+    public App(String name, String packageName, boolean selected) {
+        this.name = name;
+        this.label = name;
+        this.packageName = packageName;
+        this.selected = selected;
+    }
+}
@@ -0,0 +1,133 @@
+package com.sndurkin.notificationcheck.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// This is the rule deciding how notifications from an application are checked: whether
+// they're checked at all, how strongly the phone vibrates for them, how often they may
+// cause a vibration and during which hours of the day they're ignored.
+public class AppRule {
+
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_HIGH = 2;
+
+    // Any field of a per-application rule may be set to this to take its value from the
+    // rule that applies to all applications instead.
+    public static final int INHERIT = -2;
+
+    public static final AppRule INCLUDE = new AppRule(true, PRIORITY_NORMAL, 0, -1, -1);
+    public static final AppRule EXCLUDE = new AppRule(false, PRIORITY_NORMAL, 0, -1, -1);
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    public final boolean include;
+    public final int priority;
+    public final long minIntervalMillis;
+    // Quiet hours, as minutes of the day; the end may be before the start, in which case
+    // they span midnight. Both are -1 if there aren't any.
+    public final int quietStartMinute;
+    public final int quietEndMinute;
+
+    public AppRule(boolean include, int priority, long minIntervalMillis, int quietStartMinute, int quietEndMinute) {
+        this.include = include;
+        this.priority = priority;
+        this.minIntervalMillis = minIntervalMillis;
+        this.quietStartMinute = quietStartMinute;
+        this.quietEndMinute = quietEndMinute;
+    }
+
+    public AppRule withInclude(boolean include) {
+        return new AppRule(include, priority, minIntervalMillis, quietStartMinute, quietEndMinute);
+    }
+
+    public AppRule withPriority(int priority) {
+        return new AppRule(include, priority, minIntervalMillis, quietStartMinute, quietEndMinute);
+    }
+
+    // Returns this rule with its inherited fields taken from the given one.
+    public AppRule inheritFrom(AppRule base) {
+        boolean inheritQuietHours = quietStartMinute == INHERIT || quietEndMinute == INHERIT;
+        return new AppRule(include,
+                           priority != INHERIT ? priority : base.priority,
+                           minIntervalMillis != INHERIT ? minIntervalMillis : base.minIntervalMillis,
+                           inheritQuietHours ? base.quietStartMinute : quietStartMinute,
+                           inheritQuietHours ? base.quietEndMinute : quietEndMinute);
+    }
+
+    public boolean hasQuietHours() {
+        return quietStartMinute >= 0 && quietStartMinute != quietEndMinute;
+    }
+
+    // Returns true if the given minute of the day falls within the quiet hours. If the time
+    // of day isn't known, minuteOfDay is -1 and this returns false.
+    public boolean isQuietAt(int minuteOfDay) {
+        if(minuteOfDay < 0 || !hasQuietHours()) {
+            return false;
+        }
+        if(quietStartMinute < quietEndMinute) {
+            return minuteOfDay >= quietStartMinute && minuteOfDay < quietEndMinute;
+        }
+        return minuteOfDay >= quietStartMinute || minuteOfDay < quietEndMinute;
+    }
+
+    // Returns the minute of the day of the given wall clock time, where offsetMillis is the
+    // time zone's offset from UTC.
+    public static int minuteOfDay(long wallTimeMillis, int offsetMillis) {
+        long minutes = (wallTimeMillis + offsetMillis) / 60000;
+        int minute = (int) (minutes % MINUTES_PER_DAY);
+        return minute < 0 ? minute + MINUTES_PER_DAY : minute;
+    }
+
+    // Rules are stored as "priority,minIntervalMillis,quietStartMinute,quietEndMinute".
+    // Whether an application is included isn't stored with its rule; that always follows
+    // the mode and the selected packages, so there's only one place to change it.
+    public String format() {
+        return priority + "," + minIntervalMillis + "," + quietStartMinute + "," + quietEndMinute;
+    }
+
+    // Parses a rule written by format(), returning null if it's invalid. Rules written
+    // before the include field was dropped still parse; the field is ignored.
+    public static AppRule parse(String value) {
+        String[] fields = value.split(",");
+        if(fields.length != 4 && fields.length != 5) {
+            return null;
+        }
+        int first = fields.length - 4;
+        try {
+            return new AppRule(true,
+                               Integer.parseInt(fields[first]),
+                               Long.parseLong(fields[first + 1]),
+                               Integer.parseInt(fields[first + 2]),
+                               Integer.parseInt(fields[first + 3]));
+        }
+        catch(NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Encodes per-application rules as a PackageListCodec list of "packageName=rule" entries.
+    public static String encodeAll(Map<String, AppRule> rules) {
+        List<String> entries = new ArrayList<String>(rules.size());
+        for(Map.Entry<String, AppRule> entry : rules.entrySet()) {
+            entries.add(entry.getKey() + "=" + entry.getValue().format());
+        }
+        return PackageListCodec.encode(entries);
+    }
+
+    // Decodes per-application rules written by encodeAll(), skipping any invalid entries.
+    public static Map<String, AppRule> decodeAll(String value) {
+        Map<String, AppRule> rules = new LinkedHashMap<String, AppRule>();
+        for(String entry : PackageListCodec.decode(value)) {
+            int separator = entry.lastIndexOf('=');
+            AppRule rule = separator > 0 ? parse(entry.substring(separator + 1)) : null;
+            if(rule != null) {
+                rules.put(entry.substring(0, separator), rule);
+            }
+        }
+        return rules;
+    }
+
+}
@@ -0,0 +1,163 @@
+package com.sndurkin.notificationcheck.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+// This is a prefix index over the labels and package names of a list of applications, used
+// to filter NotificationListPreference as the user types. It's built once, as a sorted array
+// of tokens (the words of each label and the segments of each package name, along with the
+// full strings), so each query is a binary search plus a walk over the matching tokens.
+public class AppSearchIndex {
+
+    private final String[] tokens;
+    private final int[] positions;
+
+    private String lastQuery = "";
+    private int[] lastResult;
+
+    // The labels and package names are indexed by their position in the list.
+    public AppSearchIndex(List<String> labels, List<String> packageNames) {
+        int size = labels.size();
+        List<Token> tokenList = new ArrayList<Token>(size * 4);
+        for(int i = 0; i < size; ++i) {
+            addTokens(tokenList, labels.get(i), i);
+            addTokens(tokenList, packageNames.get(i), i);
+        }
+
+        Token[] sortedTokens = tokenList.toArray(new Token[tokenList.size()]);
+        Arrays.sort(sortedTokens);
+
+        tokens = new String[sortedTokens.length];
+        positions = new int[sortedTokens.length];
+        for(int i = 0; i < sortedTokens.length; ++i) {
+            tokens[i] = sortedTokens[i].text;
+            positions[i] = sortedTokens[i].position;
+        }
+    }
+
+    // Returns the positions of the applications matching the given query in ascending order,
+    // or null if the query is empty and everything matches. Every word of the query must be
+    // the prefix of a word in the label or of a segment of the package name.
+    public int[] search(String query) {
+        String normalizedQuery = query.trim().toLowerCase(Locale.getDefault());
+        if(normalizedQuery.length() == 0) {
+            lastQuery = normalizedQuery;
+            lastResult = null;
+            return null;
+        }
+
+        // When the user keeps typing, the new results can only be a subset of the last ones.
+        int[] result = normalizedQuery.startsWith(lastQuery) ? lastResult : null;
+        for(String word : normalizedQuery.split("\\s+")) {
+            int[] matches = findPrefix(word);
+            result = result == null ? matches : intersect(result, matches);
+            if(result.length == 0) {
+                break;
+            }
+        }
+
+        lastQuery = normalizedQuery;
+        lastResult = result;
+        return result;
+    }
+
+    // Returns the sorted, distinct positions of all tokens starting with the given prefix.
+    private int[] findPrefix(String prefix) {
+        int low = 0;
+        int high = tokens.length;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(tokens[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+
+        int end = low;
+        while(end < tokens.length && tokens[end].startsWith(prefix)) {
+            ++end;
+        }
+
+        int[] matches = new int[end - low];
+        System.arraycopy(positions, low, matches, 0, matches.length);
+        Arrays.sort(matches);
+
+        int count = 0;
+        for(int i = 0; i < matches.length; ++i) {
+            if(count == 0 || matches[count - 1] != matches[i]) {
+                matches[count++] = matches[i];
+            }
+        }
+        return truncate(matches, count);
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while(i < a.length && j < b.length) {
+            if(a[i] < b[j]) {
+                ++i;
+            }
+            else if(a[i] > b[j]) {
+                ++j;
+            }
+            else {
+                result[count++] = a[i];
+                ++i;
+                ++j;
+            }
+        }
+        return truncate(result, count);
+    }
+
+    private static int[] truncate(int[] array, int length) {
+        if(length == array.length) {
+            return array;
+        }
+        int[] result = new int[length];
+        System.arraycopy(array, 0, result, 0, length);
+        return result;
+    }
+
+    private static void addTokens(List<Token> tokenList, String text, int position) {
+        String normalizedText = text.toLowerCase(Locale.getDefault());
+        tokenList.add(new Token(normalizedText, position));
+
+        int start = -1;
+        for(int i = 0; i <= normalizedText.length(); ++i) {
+            boolean isWordChar = i < normalizedText.length() && Character.isLetterOrDigit(normalizedText.charAt(i));
+            if(isWordChar && start < 0) {
+                start = i;
+            }
+            else if(!isWordChar && start >= 0) {
+                // The full text is already in there.
+                if(start > 0 || i < normalizedText.length()) {
+                    tokenList.add(new Token(normalizedText.substring(start, i), position));
+                }
+                start = -1;
+            }
+        }
+    }
+
+    private static class Token implements Comparable<Token> {
+        final String text;
+        final int position;
+
+        Token(String text, int position) {
+            this.text = text;
+            this.position = position;
+        }
+
+        @Override
+        public int compareTo(Token other) {
+            return text.compareTo(other.text);
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.sndurkin.notificationcheck.core;
+
+import java.text.Collator;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+// This puts the list of applications shown in the application picker in order once it's
+// fully loaded: selected applications first, then alphabetically.
+public class AppSorter {
+
+    private static final Comparator<App> COMPARATOR = new Comparator<App>() {
+        @Override
+        public int compare(App a, App b) {
+            if(a.selected && !b.selected) {
+                return -1;
+            }
+            else if(!a.selected && b.selected) {
+                return 1;
+            }
+
+            int result = a.sortKey.compareTo(b.sortKey);
+            return result != 0 ? result : a.packageName.compareTo(b.packageName);
+        }
+    };
+
+    private AppSorter() {
+    }
+
+    // Disambiguates duplicate names and sorts the given list in place. Names are compared
+    // through collation keys computed once per application, so that they're ordered
+    // according to the given locale regardless of case and accents. Names are derived from
+    // the labels every time, so a list can be sorted again after applications are added
+    // to it or removed from it.
+    public static void sort(List<App> apps, Locale locale) {
+        Collator collator = Collator.getInstance(locale);
+        collator.setStrength(Collator.SECONDARY);
+
+        Set<String> duplicateAppNames = findDuplicateAppNames(apps);
+        for(App app : apps) {
+            if(duplicateAppNames.contains(app.label)) {
+                // If there's a duplicate application name, we want to append the package name
+                // to eliminate confusion.
+                app.name = app.label + " (" + app.packageName + ")";
+            }
+            else {
+                app.name = app.label;
+            }
+            app.sortKey = collator.getCollationKey(app.name);
+        }
+
+        Collections.sort(apps, COMPARATOR);
+    }
+
+    private static Set<String> findDuplicateAppNames(List<App> apps) {
+        HashSet<String> appNames = new HashSet<String>();
+        HashSet<String> duplicateAppNames = new HashSet<String>();
+        for(App app : apps) {
+            if(!appNames.add(app.label)) {
+                duplicateAppNames.add(app.label);
+            }
+        }
+        return duplicateAppNames;
+    }
+
+}
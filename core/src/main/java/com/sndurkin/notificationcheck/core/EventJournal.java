@@ -0,0 +1,300 @@
+package com.sndurkin.notificationcheck.core;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// This is an append-only journal of the notification events of the current screen
+// session, so they survive the process being killed while the screen is off. Each event
+// is a single write() of a small checksummed record; it isn't synced, because the kernel
+// keeps the data even if the process dies, which is the case this is for. Ending the
+// session truncates the file, and once it grows past COMPACT_THRESHOLD (and well past its
+// size after the last compaction) it's rewritten with one record per package. When the
+// journal is opened, the records are read back up to the first torn or corrupt one.
+//
+// Event times are uptime, which starts over after a reboot, so the file starts with a
+// header identifying the boot it was written during: a magic number (int) and the wall
+// clock time the device booted (long). A journal from another boot is discarded whole.
+// Each record after it is laid out as: type (1 byte), package name length (1 byte),
+// package name (ASCII), event count (int), last event time (long), CRC32 of all of the
+// above (int).
+//
+// It does file I/O and isn't thread-safe, so it's only used on NotificationTracker's
+// consumer thread. If the file can't be written, it quietly stops journaling.
+public class EventJournal {
+
+    private static final int MAGIC = 0x4e434a31;
+    private static final int HEADER_SIZE = 4 + 8;
+    // The boot time is derived from the wall clock, which may be adjusted a little while
+    // the device is up; anything beyond this must be a different boot.
+    private static final long BOOT_TIME_TOLERANCE_MILLIS = 60 * 1000;
+
+    private static final byte TYPE_EVENTS = 1;
+    private static final int MAX_NAME_LENGTH = 255;
+    private static final int MAX_RECORD_SIZE = 2 + MAX_NAME_LENGTH + 4 + 8 + 4;
+    private static final long COMPACT_THRESHOLD = 64 * 1024;
+
+    private final File file;
+    private final long bootTime;
+    private RandomAccessFile out;
+    private long size;
+    private long compactAt = COMPACT_THRESHOLD;
+    private final byte[] record = new byte[MAX_RECORD_SIZE];
+    private final CRC32 crc = new CRC32();
+
+    // The pending events by package, which is what compaction writes out.
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+    private final List<Entry> restoredEntries;
+
+    // Opens the journal, reading back the events it holds if it was written since the
+    // device booted at the given wall clock time, that is, System.currentTimeMillis()
+    // minus SystemClock.elapsedRealtime(). Otherwise it's started over.
+    public static EventJournal open(File file, long bootTime) throws IOException {
+        return new EventJournal(file, bootTime);
+    }
+
+    private EventJournal(File file, long bootTime) throws IOException {
+        this.file = file;
+        this.bootTime = bootTime;
+        out = new RandomAccessFile(file, "rw");
+        if(readHeader()) {
+            size = read();
+            out.setLength(size);
+        }
+        else {
+            out.setLength(0);
+            writeHeader(out);
+            size = HEADER_SIZE;
+        }
+        out.seek(size);
+
+        List<Entry> restored = new ArrayList<Entry>(entries.size());
+        for(Entry entry : entries.values()) {
+            restored.add(new Entry(entry.packageName, entry.count, entry.lastEventTime));
+        }
+        restoredEntries = Collections.unmodifiableList(restored);
+        if(size > compactAt) {
+            compact();
+        }
+    }
+
+    // Returns the events that were in the journal when it was opened, one entry per package.
+    public List<Entry> getRestoredEntries() {
+        return restoredEntries;
+    }
+
+    public void append(String packageName, long eventTime) {
+        if(out == null) {
+            return;
+        }
+
+        Entry entry = entries.get(packageName);
+        if(entry == null) {
+            entry = new Entry(packageName, 0, eventTime);
+            entries.put(packageName, entry);
+        }
+        ++entry.count;
+        entry.lastEventTime = eventTime;
+
+        try {
+            int recordSize = encode(packageName, 1, eventTime);
+            out.write(record, 0, recordSize);
+            size += recordSize;
+            if(size > compactAt) {
+                compact();
+            }
+        }
+        catch(IOException e) {
+            closeQuietly();
+        }
+    }
+
+    // Drops all events, when the screen session they belong to is over.
+    public void clear() {
+        entries.clear();
+        if(out == null) {
+            return;
+        }
+        try {
+            // The header stays as it is.
+            out.setLength(HEADER_SIZE);
+            out.seek(HEADER_SIZE);
+            size = HEADER_SIZE;
+            compactAt = COMPACT_THRESHOLD;
+        }
+        catch(IOException e) {
+            closeQuietly();
+        }
+    }
+
+    public void close() {
+        closeQuietly();
+    }
+
+    // Rewrites the journal with a single record per package, replacing the old file only
+    // once the new one is complete.
+    private void compact() throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        RandomAccessFile compacted = new RandomAccessFile(tempFile, "rw");
+        long compactedSize = HEADER_SIZE;
+        try {
+            compacted.setLength(0);
+            writeHeader(compacted);
+            for(Entry entry : entries.values()) {
+                int recordSize = encode(entry.packageName, entry.count, entry.lastEventTime);
+                compacted.write(record, 0, recordSize);
+                compactedSize += recordSize;
+            }
+        }
+        finally {
+            compacted.close();
+        }
+
+        out.close();
+        out = null;
+        if(!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Couldn't replace " + file);
+        }
+        out = new RandomAccessFile(file, "rw");
+        out.seek(compactedSize);
+        size = compactedSize;
+        // If there are so many packages that the compacted journal is large itself, wait
+        // for it to grow proportionally before compacting again.
+        compactAt = Math.max(COMPACT_THRESHOLD, compactedSize * 4);
+    }
+
+    // Returns true if the file has a header for the current boot.
+    private boolean readHeader() throws IOException {
+        if(out.length() < HEADER_SIZE) {
+            return false;
+        }
+        out.seek(0);
+        if(out.readInt() != MAGIC) {
+            return false;
+        }
+        return Math.abs(out.readLong() - bootTime) <= BOOT_TIME_TOLERANCE_MILLIS;
+    }
+
+    private void writeHeader(RandomAccessFile file) throws IOException {
+        writeInt(record, 0, MAGIC);
+        writeLong(record, 4, bootTime);
+        file.write(record, 0, HEADER_SIZE);
+    }
+
+    // Reads the records following the header into the entries and returns the length of
+    // the valid part of the file.
+    private long read() throws IOException {
+        long validLength = HEADER_SIZE;
+        out.seek(HEADER_SIZE);
+        try {
+            while(true) {
+                int type = out.readUnsignedByte();
+                int length = out.readUnsignedByte();
+                if(type != TYPE_EVENTS) {
+                    break;
+                }
+                record[0] = (byte) type;
+                record[1] = (byte) length;
+                out.readFully(record, 2, length + 12);
+                int size = 2 + length + 12;
+                crc.reset();
+                crc.update(record, 0, size);
+                if(out.readInt() != (int) crc.getValue()) {
+                    break;
+                }
+
+                char[] name = new char[length];
+                for(int i = 0; i < length; ++i) {
+                    name[i] = (char) (record[2 + i] & 0xff);
+                }
+                int count = readInt(record, 2 + length);
+                long lastEventTime = readLong(record, 6 + length);
+                validLength = out.getFilePointer();
+
+                String key = new String(name);
+                Entry entry = entries.get(key);
+                if(entry == null) {
+                    entries.put(key, new Entry(key, count, lastEventTime));
+                }
+                else {
+                    entry.count += count;
+                    entry.lastEventTime = Math.max(entry.lastEventTime, lastEventTime);
+                }
+            }
+        }
+        catch(EOFException e) {
+            // The last record is incomplete.
+        }
+        return validLength;
+    }
+
+    // Encodes a record into the record buffer and returns its size.
+    private int encode(String packageName, int count, long eventTime) {
+        int length = Math.min(MAX_NAME_LENGTH, packageName.length());
+        record[0] = TYPE_EVENTS;
+        record[1] = (byte) length;
+        for(int i = 0; i < length; ++i) {
+            record[2 + i] = (byte) packageName.charAt(i);
+        }
+        writeInt(record, 2 + length, count);
+        writeLong(record, 6 + length, eventTime);
+        crc.reset();
+        crc.update(record, 0, 14 + length);
+        writeInt(record, 14 + length, (int) crc.getValue());
+        return 18 + length;
+    }
+
+    private void closeQuietly() {
+        if(out != null) {
+            try {
+                out.close();
+            }
+            catch(IOException e) {
+                // Nothing more we can do.
+            }
+            out = null;
+        }
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private static void writeLong(byte[] buffer, int offset, long value) {
+        writeInt(buffer, offset, (int) (value >>> 32));
+        writeInt(buffer, offset + 4, (int) value);
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xff) << 24) | ((buffer[offset + 1] & 0xff) << 16)
+                | ((buffer[offset + 2] & 0xff) << 8) | (buffer[offset + 3] & 0xff);
+    }
+
+    private static long readLong(byte[] buffer, int offset) {
+        return ((long) readInt(buffer, offset) << 32) | (readInt(buffer, offset + 4) & 0xffffffffL);
+    }
+
+    public static class Entry {
+        public final String packageName;
+        public int count;
+        public long lastEventTime;
+
+        Entry(String packageName, int count, long lastEventTime) {
+            this.packageName = packageName;
+            this.count = count;
+            this.lastEventTime = lastEventTime;
+        }
+    }
+
+}
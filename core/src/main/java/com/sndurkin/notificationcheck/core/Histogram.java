@@ -0,0 +1,94 @@
+package com.sndurkin.notificationcheck.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// This is a lock-free histogram with fixed power-of-two buckets: bucket 0 counts zeros and
+// bucket i counts values from 2^(i-1) up to 2^i - 1, with everything larger going into
+// the last one. Recording a value is a few atomic increments and never allocates, so it
+// can be used on the hot paths; percentiles are only as precise as the buckets.
+public class Histogram {
+
+    private static final int BUCKETS = 32;
+
+    private final String name;
+    private final String unit;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public Histogram(String name, String unit) {
+        this.name = name;
+        this.unit = unit;
+    }
+
+    public void record(long value) {
+        if(value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value)));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        while(true) {
+            long currentMax = max.get();
+            if(value <= currentMax || max.compareAndSet(currentMax, value)) {
+                return;
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    // Returns the upper bound of the bucket holding the given percentile, or 0 if nothing
+    // has been recorded.
+    public long getPercentile(double percentile) {
+        long total = count.get();
+        if(total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; ++i) {
+            seen += buckets.get(i);
+            if(seen >= rank) {
+                return i == 0 ? 0 : Math.min((1L << i) - 1, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for(int i = 0; i < BUCKETS; ++i) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    // Appends a line such as "name: count=12 mean=3 p50<=3 p90<=7 p99<=15 max=9 unit".
+    public void appendTo(StringBuilder builder) {
+        long total = count.get();
+        builder.append(name)
+               .append(": count=").append(total)
+               .append(" mean=").append(total > 0 ? sum.get() / total : 0)
+               .append(" p50<=").append(getPercentile(50))
+               .append(" p90<=").append(getPercentile(90))
+               .append(" p99<=").append(getPercentile(99))
+               .append(" max=").append(max.get())
+               .append(' ').append(unit)
+               .append('\n');
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.sndurkin.notificationcheck.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// These are the process-wide counters and histograms for the hot paths: notification
+// ingestion, the SCREEN_ON decision, and loading application labels and icons for the
+// picker. Everything is lock-free and allocation-free to record, so it's always on.
+public class Metrics {
+
+    private static final Metrics instance = new Metrics();
+
+    // Ingestion.
+    public final AtomicLong notificationEvents = new AtomicLong();
+    public final AtomicLong droppedToasts = new AtomicLong();
+    public final Histogram ingestionTime = new Histogram("ingestion_time", "ns");
+
+    // SCREEN_ON.
+    public final AtomicLong screenOns = new AtomicLong();
+    public final AtomicLong debouncedScreenOns = new AtomicLong();
+    public final AtomicLong vibrations = new AtomicLong();
+    public final AtomicLong suppressedVibrations = new AtomicLong();
+    public final AtomicLong rateLimitedAlerts = new AtomicLong();
+    public final Histogram sessionEvents = new Histogram("session_events", "events");
+    public final Histogram screenOnDelay = new Histogram("screen_on_delay", "ms");
+    public final Histogram screenOnDecisionTime = new Histogram("screen_on_decision_time", "us");
+
+    // The application picker.
+    public final Histogram labelLoadTime = new Histogram("label_load_time", "ms");
+    public final AtomicLong iconCacheHits = new AtomicLong();
+    public final AtomicLong iconCacheMisses = new AtomicLong();
+    public final Histogram iconLoadTime = new Histogram("icon_load_time", "us");
+
+    public static Metrics getInstance() {
+        return instance;
+    }
+
+    public void reset() {
+        for(AtomicLong counter : counters()) {
+            counter.set(0);
+        }
+        for(Histogram histogram : histograms()) {
+            histogram.reset();
+        }
+    }
+
+    // Returns a plain text report with one line per counter or histogram.
+    public String report() {
+        StringBuilder builder = new StringBuilder();
+        String[] names = counterNames();
+        AtomicLong[] counters = counters();
+        for(int i = 0; i < counters.length; ++i) {
+            builder.append(names[i]).append(": ").append(counters[i].get()).append('\n');
+        }
+        for(Histogram histogram : histograms()) {
+            histogram.appendTo(builder);
+        }
+        return builder.toString();
+    }
+
+    private AtomicLong[] counters() {
+        return new AtomicLong[] { notificationEvents, droppedToasts, screenOns, debouncedScreenOns, vibrations,
+                                  suppressedVibrations, rateLimitedAlerts, iconCacheHits, iconCacheMisses };
+    }
+
+    private static String[] counterNames() {
+        return new String[] { "notification_events", "dropped_toasts", "screen_ons", "debounced_screen_ons", "vibrations",
+                              "suppressed_vibrations", "rate_limited_alerts", "icon_cache_hits", "icon_cache_misses" };
+    }
+
+    private Histogram[] histograms() {
+        return new Histogram[] { ingestionTime, sessionEvents, screenOnDelay, screenOnDecisionTime,
+                                 labelLoadTime, iconLoadTime };
+    }
+
+}
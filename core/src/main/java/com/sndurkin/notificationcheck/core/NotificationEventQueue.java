@@ -0,0 +1,94 @@
+package com.sndurkin.notificationcheck.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// This is a bounded, lock-free ring buffer which hands notification events from any number
+// of producer threads over to a single consumer. Each event is tagged with the screen
+// session it arrived in, so the consumer can throw away stale events on its own and
+// clearing everything only takes a counter bump by the owner.
+//
+// Producers never block; if the buffer is full, offer() returns false right away. Only one
+// thread may call poll().
+public class NotificationEventQueue {
+
+    // Must be a power of two.
+    private static final int CAPACITY = 256;
+
+    // Each slot's sequence tells whose turn it is: it equals the claiming position when the
+    // slot is free for a producer and that position + 1 once the event is ready to be read.
+    private final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private final int[] packageIds = new int[CAPACITY];
+    private final long[] eventTimes = new long[CAPACITY];
+    private final int[] generations = new int[CAPACITY];
+
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0;
+
+    // These are only valid after a successful call to poll().
+    private int polledPackageId;
+    private long polledEventTime;
+    private int polledGeneration;
+
+    public NotificationEventQueue() {
+        for(int i = 0; i < CAPACITY; ++i) {
+            sequences.set(i, i);
+        }
+    }
+
+    public boolean offer(int packageId, long eventTime, int generation) {
+        while(true) {
+            long position = tail.get();
+            int slot = (int) position & (CAPACITY - 1);
+            long sequence = sequences.get(slot);
+            if(sequence == position) {
+                if(tail.compareAndSet(position, position + 1)) {
+                    packageIds[slot] = packageId;
+                    eventTimes[slot] = eventTime;
+                    generations[slot] = generation;
+                    sequences.set(slot, position + 1);
+                    return true;
+                }
+            }
+            else if(sequence < position) {
+                // The consumer hasn't caught up yet.
+                return false;
+            }
+        }
+    }
+
+    // Takes the oldest event off the queue, making it available through the getPolled*()
+    // methods. Returns false if there aren't any.
+    public boolean poll() {
+        int slot = (int) head & (CAPACITY - 1);
+        if(sequences.get(slot) != head + 1) {
+            return false;
+        }
+
+        polledPackageId = packageIds[slot];
+        polledEventTime = eventTimes[slot];
+        polledGeneration = generations[slot];
+        sequences.set(slot, head + CAPACITY);
+        ++head;
+        return true;
+    }
+
+    // Returns a rough count of the events waiting to be polled.
+    public int size() {
+        long size = tail.get() - head;
+        return size < 0 ? 0 : (int) Math.min(size, CAPACITY);
+    }
+
+    public int getPolledPackageId() {
+        return polledPackageId;
+    }
+
+    public long getPolledEventTime() {
+        return polledEventTime;
+    }
+
+    public int getPolledGeneration() {
+        return polledGeneration;
+    }
+
+}
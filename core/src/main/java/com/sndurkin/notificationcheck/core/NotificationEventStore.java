@@ -0,0 +1,127 @@
+package com.sndurkin.notificationcheck.core;
+
+import java.util.Arrays;
+
+// This is a fixed-capacity store of the notification events received while the screen
+// is off, deduplicated by package id (see PackageIds). For each package it keeps the
+// number of events along with the times of the first and last ones, all in primitive
+// arrays that are allocated once, so memory stays flat no matter how chatty an
+// application is.
+//
+// It's an open-addressing hash table; iterate over it by slot, from 0 to capacity(),
+// skipping slots for which getPackageId() returns -1. It's not thread-safe.
+public class NotificationEventStore {
+
+    // Must be a power of two.
+    private static final int CAPACITY = 64;
+    private static final int MAX_PACKAGES = CAPACITY * 3 / 4;
+
+    private final int[] packageIds = new int[CAPACITY];
+    private final int[] counts = new int[CAPACITY];
+    private final long[] firstEventTimes = new long[CAPACITY];
+    private final long[] lastEventTimes = new long[CAPACITY];
+
+    private int size = 0;
+    private int eventCount = 0;
+    private int droppedCount = 0;
+
+    public NotificationEventStore() {
+        Arrays.fill(packageIds, -1);
+    }
+
+    // Records an event for the given package. Returns false if the package is new and
+    // the store has no room left for it, in which case the event is only counted as dropped.
+    public boolean add(int packageId, long eventTime) {
+        int slot = findSlot(packageId);
+        if(packageIds[slot] >= 0) {
+            ++eventCount;
+            if(counts[slot] != Integer.MAX_VALUE) {
+                ++counts[slot];
+            }
+            lastEventTimes[slot] = eventTime;
+            return true;
+        }
+
+        if(size == MAX_PACKAGES) {
+            ++droppedCount;
+            return false;
+        }
+
+        packageIds[slot] = packageId;
+        ++eventCount;
+        counts[slot] = 1;
+        firstEventTimes[slot] = eventTime;
+        lastEventTimes[slot] = eventTime;
+        ++size;
+        return true;
+    }
+
+    public void clear() {
+        if(size == 0 && droppedCount == 0) {
+            return;
+        }
+        Arrays.fill(packageIds, -1);
+        Arrays.fill(counts, 0);
+        size = 0;
+        eventCount = 0;
+        droppedCount = 0;
+    }
+
+    // Returns the slot holding the given package, or -1 if there isn't one.
+    public int indexOf(int packageId) {
+        int slot = findSlot(packageId);
+        return packageIds[slot] >= 0 ? slot : -1;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // The number of distinct packages in the store.
+    public int size() {
+        return size;
+    }
+
+    // The number of events in the store, across all packages.
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    // The number of events that didn't fit because the store was full.
+    public int getDroppedCount() {
+        return droppedCount;
+    }
+
+    public int capacity() {
+        return CAPACITY;
+    }
+
+    // Returns the id of the package in the given slot, or -1 if it's empty.
+    public int getPackageId(int slot) {
+        return packageIds[slot];
+    }
+
+    public int getCount(int slot) {
+        return counts[slot];
+    }
+
+    public long getFirstEventTime(int slot) {
+        return firstEventTimes[slot];
+    }
+
+    public long getLastEventTime(int slot) {
+        return lastEventTimes[slot];
+    }
+
+    // Returns either the slot holding the given package or the empty slot where it belongs.
+    private int findSlot(int packageId) {
+        int mask = CAPACITY - 1;
+        // Ids are small and dense, so spread them out with a multiplicative hash.
+        int slot = (packageId * 0x9e3779b9 >>> 16) & mask;
+        while(packageIds[slot] >= 0 && packageIds[slot] != packageId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+}
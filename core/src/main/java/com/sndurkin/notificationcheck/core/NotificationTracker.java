@@ -0,0 +1,229 @@
+package com.sndurkin.notificationcheck.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// This keeps track of the notifications received during a screen session and whether
+// any of them should cause a vibration the next time the screen is turned on. That
+// decision is made incrementally, as each event comes in, so nothing is left to evaluate
+// when the screen turns on, except for the parts of the rules that depend on when that
+// happens (minimum intervals and quiet hours) and the per-package rate limit on
+// vibrations, which take one rule probe per package.
+//
+// Notification events are handed over through a lock-free queue and collected into the
+// event store by a single consumer thread, which is the only one that touches the store.
+// Every screen session gets a new generation number; events and pending vibrations that
+// were tagged with an older one are simply ignored, so starting a new session is a
+// single counter bump. If there's an EventJournal, the consumer writes the events to it
+// as it collects them, so producers never touch the file.
+public class NotificationTracker {
+
+    // The number of queued events at which the consumer should be asked to collect them.
+    private static final int DRAIN_THRESHOLD = 64;
+
+    // Each package may cause this many vibrations in a row, and one more every interval
+    // after that, however many screen sessions it sends notifications in.
+    private static final int RATE_LIMIT_BURST = 3;
+    private static final long RATE_LIMIT_INTERVAL_MILLIS = 5 * 60 * 1000;
+
+    private final NotificationEventQueue eventQueue = new NotificationEventQueue();
+    private final NotificationEventStore eventStore = new NotificationEventStore();
+    private final Metrics metrics = Metrics.getInstance();
+    private final PackageRateLimiter rateLimiter = new PackageRateLimiter(RATE_LIMIT_INTERVAL_MILLIS, RATE_LIMIT_BURST);
+    private final AtomicInteger generation = new AtomicInteger();
+    // The generation of the last session with a pending vibration, shifted left by
+    // PRIORITY_BITS, combined with the highest priority of the events that caused it.
+    private final AtomicLong pendingVibrate = new AtomicLong(-1);
+    private static final int PRIORITY_BITS = 8;
+    private int eventStoreGeneration = 0;
+
+    // If set, the events of the current session are also written here so they can be
+    // restored if the process is killed. These are only used on the consumer thread.
+    private EventJournal journal;
+    private PackageIds journalPackageIds;
+    // While journaling, every event asks for a drain, so it's written out soon after it arrives.
+    private volatile boolean journaling = false;
+
+    // When each package last caused a vibration, indexed by PackageIds id; 0 if it never
+    // has. This is only used on the consumer thread.
+    private long[] lastAlertTimes = new long[0];
+
+    // Buffers a notification event and decides right away whether it should cause a
+    // vibration. This may be called from any thread and never blocks. Returns true if
+    // the consumer should call drain(), because enough events are queued or they're being
+    // journaled. Packages are identified by their PackageIds id, which must come from the
+    // same PackageIds as the rules.
+    public boolean addEvent(int packageId, long eventTime, RuleTable rules) {
+        metrics.notificationEvents.incrementAndGet();
+        int currentGeneration = generation.get();
+
+        // If the queue is full, the event won't make it into the event store, but the
+        // decision below doesn't depend on that.
+        eventQueue.offer(packageId, eventTime, currentGeneration);
+        AppRule rule = rules.getRule(packageId);
+        if(rule.include) {
+            setVibratePending(currentGeneration, rule.priority);
+        }
+        return journaling || eventQueue.size() >= DRAIN_THRESHOLD;
+    }
+
+    // Returns the generation of the current screen session.
+    public int getGeneration() {
+        return generation.get();
+    }
+
+    // Starts a new screen session, which discards all buffered events at once. This may be
+    // called from any thread; the journal is only truncated by the next drain().
+    public void clear() {
+        generation.incrementAndGet();
+    }
+
+    // Ends the given screen session, unless another one was already started since, and
+    // drains into the next one, which truncates the journal right away.
+    // This must be called on the consumer thread.
+    public void endSession(int sessionGeneration) {
+        if(generation.compareAndSet(sessionGeneration, sessionGeneration + 1)) {
+            drain();
+        }
+    }
+
+    // Starts journaling the events of the current session, using the given PackageIds to
+    // name them. Events restored from the journal should be added and drained before this
+    // is called, so they aren't written twice. This must be called on the consumer thread.
+    public void setJournal(EventJournal journal, PackageIds packageIds) {
+        this.journal = journal;
+        this.journalPackageIds = packageIds;
+        journaling = journal != null;
+    }
+
+    // Returns the priority of the vibration the events received during the given screen
+    // session asked for as they came in, or -1 if they didn't.
+    public int getPendingPriority(int sessionGeneration) {
+        long pending = pendingVibrate.get();
+        if((pending >> PRIORITY_BITS) != sessionGeneration) {
+            return -1;
+        }
+        return (int) (pending & ((1 << PRIORITY_BITS) - 1));
+    }
+
+    // Decides whether the events received during the given screen session should cause a
+    // vibration now, returning its priority or -1. Each package in the event store is
+    // checked against its rule's quiet hours and minimum interval and against the rate
+    // limit, and the ones that make the phone vibrate have their alert time recorded and
+    // take a token. Events that were dropped because the store was full can't be taken
+    // into account. This must be called on the consumer thread, after drain().
+    public int decide(int sessionGeneration, RuleTable rules, long now, int minuteOfDay) {
+        if(getPendingPriority(sessionGeneration) < 0) {
+            return -1;
+        }
+
+        int priority = -1;
+        for(int i = 0; i < eventStore.capacity(); ++i) {
+            int packageId = eventStore.getPackageId(i);
+            if(packageId < 0) {
+                continue;
+            }
+
+            AppRule rule = rules.getRule(packageId);
+            if(!rule.include || rule.isQuietAt(minuteOfDay)) {
+                continue;
+            }
+            if(rule.minIntervalMillis > 0) {
+                if(packageId >= lastAlertTimes.length) {
+                    long[] grown = new long[Math.max(packageId + 1, lastAlertTimes.length * 2)];
+                    System.arraycopy(lastAlertTimes, 0, grown, 0, lastAlertTimes.length);
+                    lastAlertTimes = grown;
+                }
+                long lastAlertTime = lastAlertTimes[packageId];
+                if(lastAlertTime != 0 && now - lastAlertTime < rule.minIntervalMillis) {
+                    continue;
+                }
+            }
+            if(!rateLimiter.tryAcquire(packageId, now)) {
+                metrics.rateLimitedAlerts.incrementAndGet();
+                continue;
+            }
+            if(rule.minIntervalMillis > 0) {
+                lastAlertTimes[packageId] = now != 0 ? now : 1;
+            }
+            priority = Math.max(priority, rule.priority);
+        }
+        return priority;
+    }
+
+    // Re-evaluates the buffered events of the current session with new rules. Events that
+    // were dropped because the store was full can't be taken into account here.
+    // This must be called on the consumer thread.
+    public void reevaluate(RuleTable rules) {
+        int currentGeneration = generation.get();
+        drain();
+
+        int priority = -1;
+        for(int i = 0; i < eventStore.capacity(); ++i) {
+            int packageId = eventStore.getPackageId(i);
+            if(packageId >= 0) {
+                AppRule rule = rules.getRule(packageId);
+                if(rule.include) {
+                    priority = Math.max(priority, rule.priority);
+                }
+            }
+        }
+
+        // Replace whatever was pending for the current session.
+        while(true) {
+            long pending = pendingVibrate.get();
+            if((pending >> PRIORITY_BITS) > currentGeneration) {
+                return;
+            }
+            long updated = priority >= 0 ? pack(currentGeneration, priority) : pack(currentGeneration - 1, 0);
+            if(pendingVibrate.compareAndSet(pending, updated)) {
+                return;
+            }
+        }
+    }
+
+    // Moves the queued events of the current session into the event store and the journal,
+    // which are reset first if they still hold events from an older one. This must be called
+    // on the consumer thread.
+    public void drain() {
+        int currentGeneration = generation.get();
+        if(eventStoreGeneration != currentGeneration) {
+            eventStore.clear();
+            if(journal != null) {
+                journal.clear();
+            }
+            eventStoreGeneration = currentGeneration;
+        }
+        while(eventQueue.poll()) {
+            if(eventQueue.getPolledGeneration() == currentGeneration) {
+                int packageId = eventQueue.getPolledPackageId();
+                eventStore.add(packageId, eventQueue.getPolledEventTime());
+                if(journal != null) {
+                    journal.append(journalPackageIds.getName(packageId), eventQueue.getPolledEventTime());
+                }
+            }
+        }
+    }
+
+    // Returns the events of the current session as of the last drain(). This must only be
+    // used on the consumer thread.
+    public NotificationEventStore getEventStore() {
+        return eventStore;
+    }
+
+    // Newer sessions always win, and within a session the highest priority does.
+    private void setVibratePending(int eventGeneration, int priority) {
+        long update = pack(eventGeneration, priority);
+        while(true) {
+            long pending = pendingVibrate.get();
+            if(pending >= update || pendingVibrate.compareAndSet(pending, update)) {
+                return;
+            }
+        }
+    }
+
+    private static long pack(int sessionGeneration, int priority) {
+        return ((long) sessionGeneration << PRIORITY_BITS) | priority;
+    }
+
+}
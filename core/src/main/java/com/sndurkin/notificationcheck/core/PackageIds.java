@@ -0,0 +1,158 @@
+package com.sndurkin.notificationcheck.core;
+
+// This is a process-wide table which interns package names as small integer ids, so the
+// paths that handle notification events can work on primitive ids instead of strings.
+// Lookups are lock-free and don't allocate, even for CharSequences which aren't Strings;
+// interning a new name copies the table, which only happens once per package.
+public class PackageIds {
+
+    private static final PackageIds instance = new PackageIds();
+
+    private volatile Table table = new Table(64);
+
+    public static PackageIds getInstance() {
+        return instance;
+    }
+
+    // Returns the id of the given package name, or -1 if it hasn't been interned.
+    public int lookup(CharSequence packageName) {
+        return table.lookup(packageName, hash(packageName));
+    }
+
+    // Returns the id of the given package name, assigning a new one if needed. This only
+    // allocates the first time a package name is seen.
+    public int intern(CharSequence packageName) {
+        int id = lookup(packageName);
+        return id >= 0 ? id : internLocked(packageName.toString());
+    }
+
+    // Interns all of the given package names at once, copying the table at most once, and
+    // returns their ids.
+    public synchronized int[] internAll(String[] packageNames) {
+        int[] ids = new int[packageNames.length];
+        Table current = table;
+        int missing = 0;
+        for(int i = 0; i < packageNames.length; ++i) {
+            ids[i] = current.lookup(packageNames[i], hash(packageNames[i]));
+            if(ids[i] < 0) {
+                ++missing;
+            }
+        }
+        if(missing == 0) {
+            return ids;
+        }
+
+        Table next = new Table(capacityFor(current.size + missing, current.keys.length));
+        for(int i = 0; i < current.size; ++i) {
+            next.insert(current.names[i], hash(current.names[i]));
+        }
+        for(int i = 0; i < packageNames.length; ++i) {
+            if(ids[i] < 0) {
+                // The same name may be in the array more than once.
+                int hash = hash(packageNames[i]);
+                ids[i] = next.lookup(packageNames[i], hash);
+                if(ids[i] < 0) {
+                    ids[i] = next.insert(packageNames[i], hash);
+                }
+            }
+        }
+        table = next;
+        return ids;
+    }
+
+    // Returns the package name with the given id.
+    public String getName(int id) {
+        return table.names[id];
+    }
+
+    // Returns the number of interned package names; ids are always below this.
+    public int size() {
+        return table.size;
+    }
+
+    private synchronized int internLocked(String packageName) {
+        Table current = table;
+        int hash = hash(packageName);
+        int id = current.lookup(packageName, hash);
+        if(id >= 0) {
+            return id;
+        }
+
+        Table next = new Table(capacityFor(current.size + 1, current.keys.length));
+        for(int i = 0; i < current.size; ++i) {
+            next.insert(current.names[i], hash(current.names[i]));
+        }
+        id = next.insert(packageName, hash);
+        table = next;
+        return id;
+    }
+
+    // The table is never more than half full.
+    private static int capacityFor(int size, int capacity) {
+        while(size * 2 > capacity) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    // This is the same as String.hashCode(), so Strings can use their cached hash.
+    private static int hash(CharSequence packageName) {
+        if(packageName instanceof String) {
+            return packageName.hashCode();
+        }
+        int hash = 0;
+        for(int i = 0; i < packageName.length(); ++i) {
+            hash = 31 * hash + packageName.charAt(i);
+        }
+        return hash;
+    }
+
+    private static boolean contentEquals(String key, CharSequence packageName) {
+        if(key.length() != packageName.length()) {
+            return false;
+        }
+        for(int i = 0; i < key.length(); ++i) {
+            if(key.charAt(i) != packageName.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // An open-addressing hash table which is never modified once it's published.
+    private static class Table {
+        final String[] keys;
+        final int[] ids;
+        final String[] names;
+        int size = 0;
+
+        Table(int capacity) {
+            keys = new String[capacity];
+            ids = new int[capacity];
+            names = new String[capacity / 2];
+        }
+
+        int lookup(CharSequence packageName, int hash) {
+            int mask = keys.length - 1;
+            for(int slot = (hash ^ (hash >>> 16)) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+                if(keys[slot] == packageName || contentEquals(keys[slot], packageName)) {
+                    return ids[slot];
+                }
+            }
+            return -1;
+        }
+
+        int insert(String packageName, int hash) {
+            int mask = keys.length - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while(keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = packageName;
+            ids[slot] = size;
+            names[size] = packageName;
+            return size++;
+        }
+    }
+
+}
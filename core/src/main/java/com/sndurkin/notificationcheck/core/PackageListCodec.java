@@ -0,0 +1,125 @@
+package com.sndurkin.notificationcheck.core;
+
+import java.util.Collection;
+
+// This encodes the list of selected packages stored in the pref_notifications preference.
+// The format is versioned and starts with a count header, followed by each package name
+// prefixed with its length:
+//
+//     v1:2:15:com.example.foo11:org.bar.baz
+//
+// so it can be decoded straight into an array of the right size, without any regular
+// expressions or intermediate lists. Values in the original format, where package names
+// were simply joined with '|', are still decoded; callers should write them back with
+// encode() so they're migrated.
+public class PackageListCodec {
+
+    private static final String HEADER = "v1:";
+    private static final char DELIMITER = ':';
+    private static final char LEGACY_SEPARATOR = '|';
+
+    private static final String[] EMPTY = new String[0];
+
+    private PackageListCodec() {
+    }
+
+    public static String encode(Collection<String> packageNames) {
+        StringBuilder sb = new StringBuilder(HEADER);
+        sb.append(packageNames.size()).append(DELIMITER);
+        for(String packageName : packageNames) {
+            sb.append(packageName.length()).append(DELIMITER).append(packageName);
+        }
+        return sb.toString();
+    }
+
+    public static String[] decode(String value) {
+        if(value == null || value.length() == 0) {
+            return EMPTY;
+        }
+        if(isLegacy(value)) {
+            return decodeLegacy(value);
+        }
+
+        try {
+            int[] cursor = { HEADER.length() };
+            int count = readInt(value, cursor);
+            if(count > value.length()) {
+                return EMPTY;
+            }
+            String[] packageNames = new String[count];
+            for(int i = 0; i < count; ++i) {
+                int length = readInt(value, cursor);
+                packageNames[i] = value.substring(cursor[0], cursor[0] + length);
+                cursor[0] += length;
+            }
+            return packageNames;
+        }
+        catch(IllegalArgumentException e) {
+            // A corrupt value is treated as an empty list rather than crashing the services
+            // that read it.
+            return EMPTY;
+        }
+        catch(IndexOutOfBoundsException e) {
+            return EMPTY;
+        }
+    }
+
+    // Returns the number of packages in the given value, only reading its header if possible.
+    public static int count(String value) {
+        if(value == null || value.length() == 0) {
+            return 0;
+        }
+        if(isLegacy(value)) {
+            int count = 1;
+            for(int i = value.indexOf(LEGACY_SEPARATOR); i >= 0; i = value.indexOf(LEGACY_SEPARATOR, i + 1)) {
+                ++count;
+            }
+            return count;
+        }
+        try {
+            return readInt(value, new int[] { HEADER.length() });
+        }
+        catch(IllegalArgumentException e) {
+            return 0;
+        }
+        catch(IndexOutOfBoundsException e) {
+            return 0;
+        }
+    }
+
+    // Returns true if the given non-empty value is in the original '|'-separated format.
+    public static boolean isLegacy(String value) {
+        // Package names can't contain ':', so this can't be mistaken for a legacy value.
+        return !value.startsWith(HEADER);
+    }
+
+    private static String[] decodeLegacy(String value) {
+        String[] packageNames = new String[count(value)];
+        int start = 0;
+        for(int i = 0; i < packageNames.length; ++i) {
+            int end = value.indexOf(LEGACY_SEPARATOR, start);
+            if(end < 0) {
+                end = value.length();
+            }
+            packageNames[i] = value.substring(start, end);
+            start = end + 1;
+        }
+        return packageNames;
+    }
+
+    // Reads a decimal number ending with DELIMITER at cursor[0], and moves the cursor past it.
+    private static int readInt(String value, int[] cursor) {
+        int result = 0;
+        int i = cursor[0];
+        char c;
+        while((c = value.charAt(i++)) != DELIMITER) {
+            if(c < '0' || c > '9') {
+                throw new IllegalArgumentException("Invalid package list: " + value);
+            }
+            result = result * 10 + (c - '0');
+        }
+        cursor[0] = i;
+        return result;
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.sndurkin.notificationcheck.core;
+
+// This is a token bucket per package, which keeps a chatty application from making the
+// phone vibrate every time the screen is turned on. Each package may cause a burst of
+// vibrations, after which it gets one more every interval, no matter how many screen
+// sessions go by in between.
+//
+// Buckets are indexed by PackageIds id, and the array grows as new ids show up. Each bucket
+// is a single "theoretical arrival time" (the generic cell rate algorithm), so an unused
+// package has a full bucket without ever having been set up. This is only used on the
+// consumer thread.
+public class PackageRateLimiter {
+
+    private final long intervalMillis;
+    private final long burstMillis;
+    private long[] arrivalTimes = new long[64];
+
+    public PackageRateLimiter(long intervalMillis, int burst) {
+        this.intervalMillis = intervalMillis;
+        this.burstMillis = intervalMillis * (burst - 1);
+    }
+
+    // Takes a token from the given package's bucket, returning false if it's empty. Times
+    // must be non-negative, like SystemClock.uptimeMillis().
+    public boolean tryAcquire(int packageId, long now) {
+        if(packageId >= arrivalTimes.length) {
+            long[] grown = new long[Math.max(packageId + 1, arrivalTimes.length * 2)];
+            System.arraycopy(arrivalTimes, 0, grown, 0, arrivalTimes.length);
+            arrivalTimes = grown;
+        }
+
+        long start = Math.max(arrivalTimes[packageId], now);
+        if(start - now > burstMillis) {
+            return false;
+        }
+        arrivalTimes[packageId] = start + intervalMillis;
+        return true;
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.sndurkin.notificationcheck.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// This is the compiled form of the pref_what and pref_notifications preferences and the
+// per-application rules: a flat array of AppRules indexed by PackageIds id, plus the rule
+// for every package that isn't in it. The mode only matters while compiling, so looking
+// up the rule of a package is a single array probe without any branching on the mode.
+//
+// Instances are immutable; they're meant to be rebuilt whenever one of the preferences
+// changes and swapped in as a whole, so the paths using them never have to parse anything
+// or lock.
+public class RuleTable {
+
+    private final PackageIds packageIds;
+    private final WhatToCheck whatToCheck;
+    private final AppRule[] rules;
+    private final AppRule defaultRule;
+    private final List<String> includedPackages;
+    private final boolean timeDependent;
+
+    // Compiles the rules for the given mode and selected packages. The base rule holds the
+    // settings that apply to all applications; the per-application rules override them
+    // where they don't inherit them, except for whether the application is included, which
+    // always follows the mode and the selection.
+    public static RuleTable compile(PackageIds packageIds, WhatToCheck whatToCheck, String[] selectedPackages,
+                                    AppRule baseRule, Map<String, AppRule> appRules) {
+        boolean includeSelected = whatToCheck != WhatToCheck.ALL_BUT_SELECTED_NOTIFICATIONS;
+        boolean includeOthers = whatToCheck != WhatToCheck.ONLY_SELECTED_NOTIFICATIONS;
+        AppRule selectedRule = baseRule.withInclude(includeSelected);
+        AppRule defaultRule = baseRule.withInclude(includeOthers);
+
+        int[] selectedIds = new int[selectedPackages.length];
+        int[] ruleIds = new int[appRules.size()];
+        AppRule[] overrides = new AppRule[appRules.size()];
+        int maxId = -1;
+        for(int i = 0; i < selectedPackages.length; ++i) {
+            selectedIds[i] = packageIds.intern(selectedPackages[i]);
+            maxId = Math.max(maxId, selectedIds[i]);
+        }
+        int ruleCount = 0;
+        for(Map.Entry<String, AppRule> entry : appRules.entrySet()) {
+            ruleIds[ruleCount] = packageIds.intern(entry.getKey());
+            overrides[ruleCount] = entry.getValue();
+            maxId = Math.max(maxId, ruleIds[ruleCount]);
+            ++ruleCount;
+        }
+
+        AppRule[] rules = new AppRule[maxId + 1];
+        for(int id : selectedIds) {
+            rules[id] = selectedRule;
+        }
+        for(int i = 0; i < ruleCount; ++i) {
+            AppRule current = rules[ruleIds[i]] != null ? rules[ruleIds[i]] : defaultRule;
+            rules[ruleIds[i]] = overrides[i].inheritFrom(current).withInclude(current.include);
+        }
+
+        boolean timeDependent = isTimeDependent(defaultRule);
+        List<String> includedPackages = new ArrayList<String>();
+        for(int id = 0; id < rules.length; ++id) {
+            if(rules[id] == null) {
+                rules[id] = defaultRule;
+            }
+            else if(rules[id].include) {
+                includedPackages.add(packageIds.getName(id));
+            }
+            timeDependent |= isTimeDependent(rules[id]);
+        }
+
+        return new RuleTable(packageIds, whatToCheck, rules, defaultRule,
+                             includeOthers ? null : Collections.unmodifiableList(includedPackages), timeDependent);
+    }
+
+    private RuleTable(PackageIds packageIds, WhatToCheck whatToCheck, AppRule[] rules, AppRule defaultRule,
+                      List<String> includedPackages, boolean timeDependent) {
+        this.packageIds = packageIds;
+        this.whatToCheck = whatToCheck;
+        this.rules = rules;
+        this.defaultRule = defaultRule;
+        this.includedPackages = includedPackages;
+        this.timeDependent = timeDependent;
+    }
+
+    public WhatToCheck getWhatToCheck() {
+        return whatToCheck;
+    }
+
+    // Returns the only packages whose notifications are checked, or null if notifications
+    // from packages without a rule of their own are checked as well.
+    public List<String> getIncludedPackages() {
+        return includedPackages;
+    }
+
+    // Returns true if any rule has a minimum interval or quiet hours, in which case whether
+    // a notification causes a vibration also depends on when the screen is turned on.
+    public boolean isTimeDependent() {
+        return timeDependent;
+    }
+
+    public AppRule getRule(int packageId) {
+        return packageId >= 0 && packageId < rules.length ? rules[packageId] : defaultRule;
+    }
+
+    public AppRule getRule(CharSequence packageName) {
+        return getRule(packageIds.lookup(packageName));
+    }
+
+    public PackageIds getPackageIds() {
+        return packageIds;
+    }
+
+    private static boolean isTimeDependent(AppRule rule) {
+        return rule.include && (rule.minIntervalMillis > 0 || rule.hasQuietHours());
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.sndurkin.notificationcheck.core;
+
+// This is the state machine that decides, from screen transitions and phone calls, which
+// screen session a NotificationTracker's events belong to and whether they should cause a
+// vibration when the screen is turned on. ScreenOnReceiver drives it with the broadcasts it
+// receives and TraceReplay with the records of a trace, so both always behave the same.
+//
+// Screen transitions must be reported on the thread receiving the broadcasts, decide() must
+// be called on the tracker's consumer thread, and call outcomes may be reported from any thread.
+public class ScreenSession {
+
+    private final NotificationTracker tracker;
+    private final ScreenTransitionFilter transitionFilter;
+
+    private volatile boolean missedPhoneCall = false;
+    // Set when a SCREEN_ON was debounced, so the events it would have checked are kept
+    // until the next one. This is only used on the thread receiving the broadcasts.
+    private boolean screenOnDebounced = false;
+
+    public ScreenSession(NotificationTracker tracker, long screenDebounceMillis) {
+        this.tracker = tracker;
+        transitionFilter = new ScreenTransitionFilter(screenDebounceMillis);
+    }
+
+    public void setScreenDebounceMillis(long screenDebounceMillis) {
+        transitionFilter.setWindowMillis(screenDebounceMillis);
+    }
+
+    // Returns true if a new screen session was started, in which case the consumer should
+    // drain the tracker soon, so the journal is truncated.
+    public boolean onScreenOff(long now) {
+        transitionFilter.onScreenOff(now);
+        if(screenOnDebounced) {
+            // The screen was only on for a moment and the events weren't checked, so
+            // the user hasn't been alerted to them yet.
+            screenOnDebounced = false;
+            return false;
+        }
+        else if(!missedPhoneCall) {
+            // Ignore notifications that occurred before the screen shut off; we have
+            // to assume the user has seen these because AFAIK there's no way to tell when
+            // a notification has been dismissed by the user. We don't want to vibrate
+            // for those notifications because they're no longer relevant, so we just
+            // ignore all that occur before the screen shuts off.
+            tracker.clear();
+            return true;
+        }
+        else {
+            missedPhoneCall = false;
+            return false;
+        }
+    }
+
+    // Returns true if the SCREEN_ON received at the given time should be handled, that
+    // is, decide() should be called for the current session; false if it was debounced.
+    public boolean onScreenOn(long now) {
+        if(!transitionFilter.onScreenOn(now)) {
+            screenOnDebounced = true;
+            return false;
+        }
+        return true;
+    }
+
+    // Decides whether the events received during the given screen session should cause a
+    // vibration now, returning its priority or -1, and ends the session. If the phone is
+    // ringing, the user probably isn't aware of it because the ringer is set to silent, so
+    // the session is kept and the vibration deferred to the next time the screen is turned
+    // on, unless the call is answered. This must be called after NotificationTracker.drain().
+    public int decide(int sessionGeneration, RuleTable rules, boolean ringerSilent, boolean callRinging,
+                      long now, int minuteOfDay) {
+        if(!ringerSilent) {
+            // This application is only active when the ringer is set to silent.
+            tracker.endSession(sessionGeneration);
+            return -1;
+        }
+        if(callRinging) {
+            return -1;
+        }
+
+        int priority = tracker.decide(sessionGeneration, rules, now, minuteOfDay);
+
+        // Remove all notifications, so the next check will be for fresh notifications.
+        tracker.endSession(sessionGeneration);
+        return priority;
+    }
+
+    // Called when a call that was ringing while decide() deferred a vibration is missed;
+    // the events are then kept past the next SCREEN_OFF.
+    public void onCallMissed() {
+        missedPhoneCall = true;
+    }
+
+    // Called when a call that was ringing while decide() deferred a vibration is answered;
+    // this starts a new screen session, so the consumer should drain the tracker soon.
+    public void onCallAnswered() {
+        tracker.clear();
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.sndurkin.notificationcheck.core;
+
+// This debounces screen transitions: if the screen is turned back on within the window
+// after it was turned off (a proximity sensor bounce in a pocket, or the user glancing at
+// the time over and over), the SCREEN_ON is swallowed instead of going through another
+// full decision pass and possibly another vibration. It's not thread-safe; it's meant to
+// be used on the thread receiving the broadcasts.
+public class ScreenTransitionFilter {
+
+    private long windowMillis;
+    private long lastScreenOffTime = Long.MIN_VALUE / 2;
+
+    public ScreenTransitionFilter(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    public void setWindowMillis(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    public void onScreenOff(long now) {
+        lastScreenOffTime = now;
+    }
+
+    // Returns true if the SCREEN_ON received at the given time should be handled.
+    public boolean onScreenOn(long now) {
+        return now - lastScreenOffTime >= windowMillis;
+    }
+
+}
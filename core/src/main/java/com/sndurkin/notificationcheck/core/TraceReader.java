@@ -0,0 +1,81 @@
+package com.sndurkin.notificationcheck.core;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// This reads a trace file written by TraceRecorder back in order, oldest record first.
+public class TraceReader {
+
+    private TraceReader() {
+    }
+
+    public static List<Record> read(File path) throws IOException {
+        byte[] bytes = new byte[(int) path.length()];
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+        try {
+            in.readFully(bytes);
+        }
+        finally {
+            in.close();
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if(bytes.length < TraceRecorder.RECORD_SIZE || buffer.getInt(0) != TraceRecorder.MAGIC) {
+            throw new IOException("Not a trace file: " + path);
+        }
+        if(buffer.getInt(4) != TraceRecorder.VERSION || buffer.getInt(8) != TraceRecorder.RECORD_SIZE) {
+            throw new IOException("Unsupported trace file version: " + buffer.getInt(4));
+        }
+
+        int capacity = Math.min(buffer.getInt(12), bytes.length / TraceRecorder.RECORD_SIZE - 1);
+        List<Record> records = new ArrayList<Record>(capacity);
+        char[] name = new char[TraceRecorder.MAX_NAME_LENGTH];
+        for(int i = 0; i < capacity; ++i) {
+            int offset = (i + 1) * TraceRecorder.RECORD_SIZE;
+            long sequence = buffer.getLong(offset);
+            if(sequence == 0) {
+                continue;
+            }
+
+            int length = Math.min(TraceRecorder.MAX_NAME_LENGTH, buffer.get(offset + 17) & 0xff);
+            for(int j = 0; j < length; ++j) {
+                name[j] = (char) (buffer.get(offset + 24 + j) & 0xff);
+            }
+            records.add(new Record(sequence - 1, buffer.getLong(offset + 8), buffer.get(offset + 16),
+                                   buffer.getInt(offset + 20), length > 0 ? new String(name, 0, length) : null));
+        }
+
+        Collections.sort(records, new Comparator<Record>() {
+            @Override
+            public int compare(Record a, Record b) {
+                return a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1);
+            }
+        });
+        return records;
+    }
+
+    public static class Record {
+        public final long sequence;
+        public final long eventTime;
+        public final byte type;
+        public final int arg;
+        public final String packageName;
+
+        public Record(long sequence, long eventTime, byte type, int arg, String packageName) {
+            this.sequence = sequence;
+            this.eventTime = eventTime;
+            this.type = type;
+            this.arg = arg;
+            this.packageName = packageName;
+        }
+    }
+
+}
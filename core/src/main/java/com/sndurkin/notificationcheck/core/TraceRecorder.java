@@ -0,0 +1,109 @@
+package com.sndurkin.notificationcheck.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+// This records notification events, screen transitions, ringer mode changes and phone call
+// state changes into a fixed-size ring file, so problems with how they interact can be
+// replayed later with TraceReplay. The file is memory-mapped and every record has the same
+// size, so recording one is a counter increment and a few stores into memory; the kernel
+// writes the pages back on its own. Once the ring is full, the oldest records are overwritten.
+//
+// The file starts with a header of RECORD_SIZE bytes (magic, version, record size,
+// capacity), followed by the records, each laid out as:
+//   0  long  sequence number + 1, or 0 if the slot is empty
+//   8  long  event time, in milliseconds of uptime
+//   16 byte  record type
+//   17 byte  length of the package name in bytes
+//   20 int   argument (ringer mode or call state)
+//   24       package name, truncated to MAX_NAME_LENGTH ASCII bytes
+//
+// This may be called from any thread and never blocks.
+public class TraceRecorder {
+
+    public static final int MAGIC = 0x4e435452;
+    public static final int VERSION = 2;
+    // Large enough for the package names of nearly every real application, which are
+    // rarely longer than 60 characters, even though Android allows up to 255.
+    public static final int RECORD_SIZE = 128;
+    public static final int MAX_NAME_LENGTH = RECORD_SIZE - 24;
+
+    public static final byte TYPE_NOTIFICATION = 1;
+    public static final byte TYPE_SCREEN_ON = 2;
+    public static final byte TYPE_SCREEN_OFF = 3;
+    public static final byte TYPE_RINGER_MODE = 4;
+    public static final byte TYPE_CALL_STATE = 5;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final AtomicLong nextSequence;
+
+    // Opens the given trace file, creating it if needed. Recording continues after the
+    // last record already in the file, unless it was created with a different capacity,
+    // in which case it's started over.
+    public TraceRecorder(File path, int capacity) throws IOException {
+        this.capacity = capacity;
+        file = new RandomAccessFile(path, "rw");
+        long size = (long) (capacity + 1) * RECORD_SIZE;
+        boolean compatible = file.length() == size;
+        if(!compatible) {
+            file.setLength(0);
+            file.setLength(size);
+        }
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        if(!compatible || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            for(int i = 0; i < capacity; ++i) {
+                buffer.putLong(offsetOf(i), 0);
+            }
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, RECORD_SIZE);
+            buffer.putInt(12, capacity);
+        }
+
+        long lastSequence = 0;
+        for(int i = 0; i < capacity; ++i) {
+            lastSequence = Math.max(lastSequence, buffer.getLong(offsetOf(i)));
+        }
+        nextSequence = new AtomicLong(lastSequence);
+    }
+
+    public void record(byte type, long eventTime, int arg, CharSequence packageName) {
+        long sequence = nextSequence.getAndIncrement();
+        int offset = offsetOf((int) (sequence % capacity));
+
+        // Mark the slot as empty while it's being written, so a reader never mistakes a
+        // half-written record for a complete one.
+        buffer.putLong(offset, 0);
+        buffer.putLong(offset + 8, eventTime);
+        buffer.put(offset + 16, type);
+        buffer.putInt(offset + 20, arg);
+
+        int length = 0;
+        if(packageName != null) {
+            length = Math.min(MAX_NAME_LENGTH, packageName.length());
+            for(int i = 0; i < length; ++i) {
+                buffer.put(offset + 24 + i, (byte) packageName.charAt(i));
+            }
+        }
+        buffer.put(offset + 17, (byte) length);
+        buffer.putLong(offset, sequence + 1);
+    }
+
+    // Flushes the records to disk and closes the file.
+    public void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    private static int offsetOf(int slot) {
+        return (slot + 1) * RECORD_SIZE;
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.sndurkin.notificationcheck.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+// This feeds a trace recorded by TraceRecorder through the same ScreenSession and
+// NotificationTracker that ScreenOnReceiver uses, at full speed, and reports how many times
+// the phone would have vibrated along with the throughput. The application is assumed
+// to be active; there's no time of day in a trace, so quiet hours never apply.
+//
+// Usage: TraceReplay <trace file> [what to check] [selected packages, comma-separated] [iterations]
+//                    [screen debounce in ms, as set in pref_screen_debounce]
+public class TraceReplay {
+
+    // These are the values of AudioManager.RINGER_MODE_SILENT and the TelephonyManager call states.
+    private static final int RINGER_MODE_SILENT = 0;
+    private static final int CALL_STATE_IDLE = 0;
+    private static final int CALL_STATE_RINGING = 1;
+    private static final int CALL_STATE_OFFHOOK = 2;
+
+    // The default of pref_screen_debounce.
+    private static final long DEFAULT_SCREEN_DEBOUNCE_MILLIS = 1000;
+
+    private static final String USAGE = "Usage: TraceReplay <trace file> [what to check] [selected packages, comma-separated] [iterations] [screen debounce ms]";
+
+    private final RuleTable rules;
+    private final NotificationTracker tracker = new NotificationTracker();
+    private final ScreenSession session;
+
+    private int ringerMode = RINGER_MODE_SILENT;
+    private int callState = CALL_STATE_IDLE;
+    // This stands in for the one-shot observer ScreenOnReceiver registers with
+    // PhoneCallListener when a SCREEN_ON is deferred because a call is ringing.
+    private boolean waitingForCall = false;
+
+    private int screenOns = 0;
+    private int debouncedScreenOns = 0;
+    private int vibrations = 0;
+    private int suppressedVibrations = 0;
+
+    public TraceReplay(RuleTable rules, long screenDebounceMillis) {
+        this.rules = rules;
+        session = new ScreenSession(tracker, screenDebounceMillis);
+    }
+
+    public void replay(List<TraceReader.Record> records) {
+        for(TraceReader.Record record : records) {
+            switch(record.type) {
+                case TraceRecorder.TYPE_NOTIFICATION:
+                    // A notification record without a package name is damaged; skip it.
+                    if(record.packageName == null) {
+                        break;
+                    }
+                    if(tracker.addEvent(rules.getPackageIds().intern(record.packageName), record.eventTime, rules)) {
+                        tracker.drain();
+                    }
+                    break;
+                case TraceRecorder.TYPE_SCREEN_OFF:
+                    session.onScreenOff(record.eventTime);
+                    break;
+                case TraceRecorder.TYPE_SCREEN_ON:
+                    ++screenOns;
+                    if(!session.onScreenOn(record.eventTime)) {
+                        ++debouncedScreenOns;
+                    }
+                    else {
+                        handleScreenOn(record.eventTime);
+                    }
+                    break;
+                case TraceRecorder.TYPE_RINGER_MODE:
+                    ringerMode = record.arg;
+                    break;
+                case TraceRecorder.TYPE_CALL_STATE:
+                    handleCallState(record.arg);
+                    break;
+            }
+        }
+    }
+
+    private void handleScreenOn(long eventTime) {
+        int sessionGeneration = tracker.getGeneration();
+        tracker.drain();
+        boolean vibratePending = tracker.getPendingPriority(sessionGeneration) >= 0;
+
+        boolean ringerSilent = ringerMode == RINGER_MODE_SILENT;
+        boolean callRinging = ringerSilent && callState == CALL_STATE_RINGING;
+        if(callRinging) {
+            waitingForCall = true;
+        }
+        int priority = session.decide(sessionGeneration, rules, ringerSilent, callRinging, eventTime, -1);
+
+        if(priority >= 0) {
+            ++vibrations;
+        }
+        else if(vibratePending) {
+            ++suppressedVibrations;
+        }
+    }
+
+    private void handleCallState(int state) {
+        if(callState == CALL_STATE_RINGING && waitingForCall) {
+            if(state == CALL_STATE_OFFHOOK) {
+                session.onCallAnswered();
+                waitingForCall = false;
+            }
+            else if(state == CALL_STATE_IDLE) {
+                session.onCallMissed();
+                waitingForCall = false;
+            }
+        }
+        callState = state;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        WhatToCheck whatToCheck = args.length > 1 ? WhatToCheck.valueOf(args[1]) : WhatToCheck.ALL_NOTIFICATIONS;
+        String[] selectedPackages = args.length > 2 && args[2].length() > 0 ? args[2].split(",") : new String[0];
+        int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        long screenDebounceMillis = args.length > 4 ? Long.parseLong(args[4]) : DEFAULT_SCREEN_DEBOUNCE_MILLIS;
+        if(iterations < 1 || screenDebounceMillis < 0) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        List<TraceReader.Record> records = TraceReader.read(new File(args[0]));
+        RuleTable rules = RuleTable.compile(new PackageIds(), whatToCheck, selectedPackages, AppRule.INCLUDE,
+                                            Collections.<String, AppRule>emptyMap());
+
+        TraceReplay replay = null;
+        long startTime = System.nanoTime();
+        for(int i = 0; i < iterations; ++i) {
+            replay = new TraceReplay(rules, screenDebounceMillis);
+            replay.replay(records);
+        }
+        long elapsedNanos = System.nanoTime() - startTime;
+
+        System.out.println("records: " + records.size());
+        System.out.println("screen_ons: " + replay.screenOns);
+        System.out.println("debounced_screen_ons: " + replay.debouncedScreenOns);
+        System.out.println("vibrations: " + replay.vibrations);
+        System.out.println("suppressed_vibrations: " + replay.suppressedVibrations);
+        if(elapsedNanos > 0) {
+            System.out.println("records_per_second: " + (long) ((double) records.size() * iterations * 1e9 / elapsedNanos));
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.sndurkin.notificationcheck.core;
+
+// The values of the pref_what preference, which are stored as their ordinals.
+public enum WhatToCheck {
+    ALL_NOTIFICATIONS,
+    ONLY_SELECTED_NOTIFICATIONS,
+    ALL_BUT_SELECTED_NOTIFICATIONS;
+
+    public static final String DEFAULT_VALUE = String.valueOf(ALL_NOTIFICATIONS.ordinal());
+
+    private static final WhatToCheck[] VALUES = values();
+
+    // Parses a stored preference value, falling back to ALL_NOTIFICATIONS if it's invalid.
+    public static WhatToCheck fromValue(String value) {
+        int ordinal;
+        try {
+            ordinal = Integer.parseInt(value);
+        }
+        catch(NumberFormatException e) {
+            return ALL_NOTIFICATIONS;
+        }
+        return (ordinal >= 0 && ordinal < VALUES.length) ? VALUES[ordinal] : ALL_NOTIFICATIONS;
+    }
+}
@@ -0,0 +1,64 @@
+package com.sndurkin.notificationcheck.core;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AppRuleTest {
+
+    @Test
+    public void roundTripsRules() {
+        Map<String, AppRule> rules = new LinkedHashMap<String, AppRule>();
+        rules.put("com.example.foo", new AppRule(true, AppRule.PRIORITY_HIGH, AppRule.INHERIT, AppRule.INHERIT, AppRule.INHERIT));
+        rules.put("org.bar.baz", new AppRule(true, AppRule.PRIORITY_LOW, 60000, 22 * 60, 7 * 60));
+
+        Map<String, AppRule> decoded = AppRule.decodeAll(AppRule.encodeAll(rules));
+        assertEquals(2, decoded.size());
+        AppRule rule = decoded.get("org.bar.baz");
+        assertEquals(AppRule.PRIORITY_LOW, rule.priority);
+        assertEquals(60000, rule.minIntervalMillis);
+        assertEquals(22 * 60, rule.quietStartMinute);
+        assertEquals(7 * 60, rule.quietEndMinute);
+        assertEquals(AppRule.PRIORITY_HIGH, decoded.get("com.example.foo").priority);
+    }
+
+    @Test
+    public void parsesRulesWithIncludeField() {
+        AppRule rule = AppRule.parse("0,2,-2,-2,-2");
+        assertEquals(AppRule.PRIORITY_HIGH, rule.priority);
+        assertEquals(AppRule.INHERIT, rule.minIntervalMillis);
+        assertNull(AppRule.parse("1,2,3"));
+        assertNull(AppRule.parse("1,x,0,0"));
+    }
+
+    @Test
+    public void inclusionFollowsSelection() {
+        PackageIds packageIds = new PackageIds();
+        Map<String, AppRule> appRules = new LinkedHashMap<String, AppRule>();
+        appRules.put("com.example.unselected", AppRule.parse("2,-2,-2,-2"));
+        appRules.put("com.example.selected", AppRule.parse("0,-2,-2,-2"));
+
+        RuleTable rules = RuleTable.compile(packageIds, WhatToCheck.ONLY_SELECTED_NOTIFICATIONS,
+                                            new String[] { "com.example.selected" }, AppRule.INCLUDE, appRules);
+        assertFalse(rules.getRule("com.example.unselected").include);
+        assertTrue(rules.getRule("com.example.selected").include);
+        assertEquals(AppRule.PRIORITY_LOW, rules.getRule("com.example.selected").priority);
+        assertFalse(rules.getRule("com.example.other").include);
+    }
+
+    @Test
+    public void findsQuietHoursAcrossMidnight() {
+        AppRule rule = new AppRule(true, AppRule.PRIORITY_NORMAL, 0, 22 * 60, 7 * 60);
+        assertTrue(rule.isQuietAt(23 * 60));
+        assertTrue(rule.isQuietAt(6 * 60));
+        assertFalse(rule.isQuietAt(12 * 60));
+        assertFalse(rule.isQuietAt(-1));
+    }
+
+}
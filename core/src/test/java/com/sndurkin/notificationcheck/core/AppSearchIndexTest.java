@@ -0,0 +1,52 @@
+package com.sndurkin.notificationcheck.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+public class AppSearchIndexTest {
+
+    private static AppSearchIndex newIndex() {
+        return new AppSearchIndex(Arrays.asList("Google Maps", "Gmail", "Maps Offline", "Calendar"),
+                                  Arrays.asList("com.google.android.apps.maps", "com.google.android.gm",
+                                                "org.example.offlinemaps", "com.android.calendar"));
+    }
+
+    @Test
+    public void matchesLabelWordsAndPackageSegments() {
+        AppSearchIndex index = newIndex();
+        assertArrayEquals(new int[] { 0, 2 }, index.search("maps"));
+        assertArrayEquals(new int[] { 0, 1 }, index.search("google"));
+        assertArrayEquals(new int[] { 2 }, index.search("offlinemaps"));
+        assertArrayEquals(new int[] { 3 }, index.search("  CAL "));
+        assertArrayEquals(new int[0], index.search("xyz"));
+        assertNull(index.search(" "));
+    }
+
+    @Test
+    public void intersectsWords() {
+        AppSearchIndex index = newIndex();
+        assertArrayEquals(new int[] { 0 }, index.search("maps google"));
+        assertArrayEquals(new int[] { 2 }, index.search("org maps"));
+        assertArrayEquals(new int[0], index.search("gmail calendar"));
+    }
+
+    @Test
+    public void narrowsAndWidensAsUserTypes() {
+        AppSearchIndex index = newIndex();
+        assertArrayEquals(new int[] { 0, 1 }, index.search("g"));
+        assertArrayEquals(new int[] { 0, 1 }, index.search("go"));
+        assertArrayEquals(new int[] { 0 }, index.search("go m"));
+        assertArrayEquals(new int[] { 0 }, index.search("go ma"));
+        assertArrayEquals(new int[0], index.search("go max"));
+
+        // Deleting characters can't reuse the narrower results.
+        assertArrayEquals(new int[] { 0, 2 }, index.search("ma"));
+        assertNull(index.search(""));
+        assertArrayEquals(new int[] { 0, 1, 3 }, index.search("com"));
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.sndurkin.notificationcheck.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EventJournalTest {
+
+    private static final long BOOT_TIME = 1500000000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void restoresEventsPerPackage() throws IOException {
+        File file = folder.newFile();
+        EventJournal journal = EventJournal.open(file, BOOT_TIME);
+        journal.append("com.example.foo", 100);
+        journal.append("org.bar.baz", 200);
+        journal.append("com.example.foo", 300);
+        journal.close();
+
+        List<EventJournal.Entry> entries = EventJournal.open(file, BOOT_TIME).getRestoredEntries();
+        assertEquals(2, entries.size());
+        assertEntry(entries.get(0), "com.example.foo", 2, 300);
+        assertEntry(entries.get(1), "org.bar.baz", 1, 200);
+    }
+
+    @Test
+    public void stopsAtTornRecord() throws IOException {
+        File file = folder.newFile();
+        EventJournal journal = EventJournal.open(file, BOOT_TIME);
+        journal.append("com.example.foo", 100);
+        journal.append("org.bar.baz", 200);
+        journal.close();
+
+        // Cut the last record short, as if the process died in the middle of writing it.
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+
+        journal = EventJournal.open(file, BOOT_TIME);
+        List<EventJournal.Entry> entries = journal.getRestoredEntries();
+        assertEquals(1, entries.size());
+        assertEntry(entries.get(0), "com.example.foo", 1, 100);
+
+        // The torn tail is cut off, so new records follow the valid ones.
+        journal.append("org.bar.baz", 300);
+        journal.close();
+        entries = EventJournal.open(file, BOOT_TIME).getRestoredEntries();
+        assertEquals(2, entries.size());
+        assertEntry(entries.get(1), "org.bar.baz", 1, 300);
+    }
+
+    @Test
+    public void stopsAtCorruptRecord() throws IOException {
+        File file = folder.newFile();
+        EventJournal journal = EventJournal.open(file, BOOT_TIME);
+        journal.append("com.example.foo", 100);
+        long firstRecordSize = file.length();
+        journal.append("org.bar.baz", 200);
+        journal.append("com.example.foo", 300);
+        journal.close();
+
+        // Flip a bit in the second record's package name.
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(firstRecordSize + 4);
+        int b = raf.read();
+        raf.seek(firstRecordSize + 4);
+        raf.write(b ^ 1);
+        raf.close();
+
+        List<EventJournal.Entry> entries = EventJournal.open(file, BOOT_TIME).getRestoredEntries();
+        assertEquals(1, entries.size());
+        assertEntry(entries.get(0), "com.example.foo", 1, 100);
+    }
+
+    @Test
+    public void dropsEventsFromBeforeReboot() throws IOException {
+        File file = folder.newFile();
+        EventJournal journal = EventJournal.open(file, BOOT_TIME);
+        journal.append("com.example.foo", 50000);
+        journal.close();
+
+        // Small adjustments of the wall clock don't look like a reboot.
+        assertEquals(1, EventJournal.open(file, BOOT_TIME + 2000).getRestoredEntries().size());
+        assertEquals(1, EventJournal.open(file, BOOT_TIME - 2000).getRestoredEntries().size());
+
+        journal = EventJournal.open(file, BOOT_TIME + 10 * 60 * 1000);
+        assertEquals(Collections.<EventJournal.Entry>emptyList(), journal.getRestoredEntries());
+        journal.append("org.bar.baz", 100);
+        journal.close();
+
+        // The journal now belongs to the new boot.
+        List<EventJournal.Entry> entries = EventJournal.open(file, BOOT_TIME + 10 * 60 * 1000).getRestoredEntries();
+        assertEquals(1, entries.size());
+        assertEntry(entries.get(0), "org.bar.baz", 1, 100);
+    }
+
+    @Test
+    public void discardsFileWithoutHeader() throws IOException {
+        File file = folder.newFile();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.write(new byte[] { 1, 3, 'f', 'o', 'o' });
+        raf.close();
+
+        EventJournal journal = EventJournal.open(file, BOOT_TIME);
+        assertEquals(Collections.<EventJournal.Entry>emptyList(), journal.getRestoredEntries());
+        journal.append("com.example.foo", 100);
+        journal.close();
+        assertEquals(1, EventJournal.open(file, BOOT_TIME).getRestoredEntries().size());
+    }
+
+    @Test
+    public void clearDropsEverything() throws IOException {
+        File file = folder.newFile();
+        EventJournal journal = EventJournal.open(file, BOOT_TIME);
+        journal.append("com.example.foo", 100);
+        journal.clear();
+        journal.append("org.bar.baz", 200);
+        journal.close();
+
+        List<EventJournal.Entry> entries = EventJournal.open(file, BOOT_TIME).getRestoredEntries();
+        assertEquals(1, entries.size());
+        assertEntry(entries.get(0), "org.bar.baz", 1, 200);
+    }
+
+    @Test
+    public void compactsIntoOneRecordPerPackage() throws IOException {
+        File file = folder.newFile();
+        EventJournal journal = EventJournal.open(file, BOOT_TIME);
+        int events = 10000;
+        for(int i = 0; i < events; ++i) {
+            journal.append(i % 2 == 0 ? "com.example.foo" : "org.bar.baz", i);
+        }
+        journal.close();
+        assertTrue(file.length() < 64 * 1024);
+
+        List<EventJournal.Entry> entries = EventJournal.open(file, BOOT_TIME).getRestoredEntries();
+        assertEquals(2, entries.size());
+        assertEntry(entries.get(0), "com.example.foo", events / 2, events - 2);
+        assertEntry(entries.get(1), "org.bar.baz", events / 2, events - 1);
+    }
+
+    private static void assertEntry(EventJournal.Entry entry, String packageName, int count, long lastEventTime) {
+        assertEquals(packageName, entry.packageName);
+        assertEquals(count, entry.count);
+        assertEquals(lastEventTime, entry.lastEventTime);
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.sndurkin.notificationcheck.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationEventQueueTest {
+
+    @Test
+    public void pollsEventsInOrder() {
+        NotificationEventQueue queue = new NotificationEventQueue();
+        assertTrue(queue.offer(1, 100, 0));
+        assertTrue(queue.offer(2, 200, 1));
+
+        assertTrue(queue.poll());
+        assertEquals(1, queue.getPolledPackageId());
+        assertEquals(100, queue.getPolledEventTime());
+        assertEquals(0, queue.getPolledGeneration());
+
+        assertTrue(queue.poll());
+        assertEquals(2, queue.getPolledPackageId());
+        assertEquals(200, queue.getPolledEventTime());
+        assertEquals(1, queue.getPolledGeneration());
+
+        assertFalse(queue.poll());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void rejectsEventsWhenFull() {
+        NotificationEventQueue queue = new NotificationEventQueue();
+        int capacity = 0;
+        while(queue.offer(capacity, capacity, 0)) {
+            ++capacity;
+        }
+        assertEquals(256, capacity);
+        assertEquals(capacity, queue.size());
+
+        // Polling one makes room for exactly one more.
+        assertTrue(queue.poll());
+        assertTrue(queue.offer(capacity, capacity, 0));
+        assertFalse(queue.offer(capacity + 1, capacity + 1, 0));
+    }
+
+    @Test
+    public void deliversEveryEventFromConcurrentProducers() throws InterruptedException {
+        final NotificationEventQueue queue = new NotificationEventQueue();
+        final int producers = 4;
+        final int eventsPerProducer = 100000;
+        final CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] threads = new Thread[producers];
+        for(int p = 0; p < producers; ++p) {
+            final int packageId = p;
+            threads[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    }
+                    catch(InterruptedException e) {
+                        return;
+                    }
+                    for(int i = 0; i < eventsPerProducer; ++i) {
+                        while(!queue.offer(packageId, i, 0)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        start.countDown();
+
+        // Each producer's events must come out complete and in the order they went in.
+        long[] nextEventTimes = new long[producers];
+        int received = 0;
+        while(received < producers * eventsPerProducer) {
+            if(!queue.poll()) {
+                Thread.yield();
+                continue;
+            }
+            int packageId = queue.getPolledPackageId();
+            assertEquals(nextEventTimes[packageId]++, queue.getPolledEventTime());
+            ++received;
+        }
+
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        assertFalse(queue.poll());
+    }
+
+}
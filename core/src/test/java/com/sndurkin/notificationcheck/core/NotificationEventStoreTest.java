@@ -0,0 +1,53 @@
+package com.sndurkin.notificationcheck.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationEventStoreTest {
+
+    @Test
+    public void deduplicatesByPackage() {
+        NotificationEventStore store = new NotificationEventStore();
+        assertTrue(store.add(7, 100));
+        assertTrue(store.add(3, 150));
+        assertTrue(store.add(7, 200));
+
+        assertEquals(2, store.size());
+        assertEquals(3, store.getEventCount());
+        int slot = store.indexOf(7);
+        assertEquals(7, store.getPackageId(slot));
+        assertEquals(2, store.getCount(slot));
+        assertEquals(100, store.getFirstEventTime(slot));
+        assertEquals(200, store.getLastEventTime(slot));
+        assertEquals(-1, store.indexOf(5));
+    }
+
+    @Test
+    public void dropsNewPackagesWhenFull() {
+        NotificationEventStore store = new NotificationEventStore();
+        int maxPackages = store.capacity() * 3 / 4;
+        for(int i = 0; i < maxPackages; ++i) {
+            assertTrue(store.add(i, i));
+        }
+
+        // Packages already in the store still get counted, new ones don't fit.
+        assertFalse(store.add(maxPackages, 1000));
+        assertFalse(store.add(maxPackages + 1, 1001));
+        assertTrue(store.add(0, 1002));
+        assertEquals(maxPackages, store.size());
+        assertEquals(maxPackages + 1, store.getEventCount());
+        assertEquals(2, store.getDroppedCount());
+        assertEquals(-1, store.indexOf(maxPackages));
+        assertEquals(2, store.getCount(store.indexOf(0)));
+
+        store.clear();
+        assertTrue(store.isEmpty());
+        assertEquals(0, store.getEventCount());
+        assertEquals(0, store.getDroppedCount());
+        assertTrue(store.add(maxPackages, 2000));
+    }
+
+}
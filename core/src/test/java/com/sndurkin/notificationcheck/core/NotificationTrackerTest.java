@@ -0,0 +1,100 @@
+package com.sndurkin.notificationcheck.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationTrackerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void firstEventOfNewSessionArmsVibration() {
+        PackageIds packageIds = new PackageIds();
+        RuleTable rules = RuleTable.compile(packageIds, WhatToCheck.ALL_NOTIFICATIONS, new String[0],
+                                            AppRule.INCLUDE, Collections.<String, AppRule>emptyMap());
+        int packageId = packageIds.intern("com.example.chatty");
+        NotificationTracker tracker = new NotificationTracker();
+        for(int i = 0; i < 5; ++i) {
+            tracker.addEvent(packageId, 100 + i, rules);
+        }
+
+        // The user was looking at the screen; turning it off starts a new session.
+        tracker.clear();
+        int generation = tracker.getGeneration();
+        tracker.addEvent(packageId, 200, rules);
+        tracker.drain();
+        assertEquals(AppRule.PRIORITY_NORMAL, tracker.decide(generation, rules, 300, -1));
+    }
+
+    @Test
+    public void limitsVibrationsAcrossSessions() {
+        PackageIds packageIds = new PackageIds();
+        RuleTable rules = RuleTable.compile(packageIds, WhatToCheck.ALL_NOTIFICATIONS, new String[0],
+                                            AppRule.INCLUDE, Collections.<String, AppRule>emptyMap());
+        int chatty = packageIds.intern("com.example.chatty");
+        NotificationTracker tracker = new NotificationTracker();
+
+        // One notification per screen session, with the screen turned on every minute.
+        long now = 1000;
+        int vibrations = 0;
+        for(int i = 0; i < 10; ++i, now += 60 * 1000) {
+            int generation = tracker.getGeneration();
+            tracker.addEvent(chatty, now, rules);
+            tracker.drain();
+            if(tracker.decide(generation, rules, now, -1) >= 0) {
+                ++vibrations;
+            }
+            tracker.endSession(generation);
+        }
+        assertEquals(4, vibrations);
+
+        // Other packages still get through.
+        int generation = tracker.getGeneration();
+        tracker.addEvent(chatty, now, rules);
+        tracker.addEvent(packageIds.intern("org.bar.baz"), now, rules);
+        tracker.drain();
+        assertEquals(AppRule.PRIORITY_NORMAL, tracker.decide(generation, rules, now, -1));
+    }
+
+    @Test
+    public void journalsEventsOnDrainAndTruncatesForNewSession() throws IOException {
+        PackageIds packageIds = new PackageIds();
+        RuleTable rules = RuleTable.compile(packageIds, WhatToCheck.ALL_NOTIFICATIONS, new String[0],
+                                            AppRule.INCLUDE, Collections.<String, AppRule>emptyMap());
+        File file = folder.newFile();
+        NotificationTracker tracker = new NotificationTracker();
+        tracker.setJournal(EventJournal.open(file, 1000), packageIds);
+        long emptyLength = file.length();
+
+        // Producers only queue events; the consumer writes them out.
+        assertTrue(tracker.addEvent(packageIds.intern("com.example.foo"), 100, rules));
+        assertEquals(emptyLength, file.length());
+        tracker.drain();
+        List<EventJournal.Entry> entries = EventJournal.open(file, 1000).getRestoredEntries();
+        assertEquals(1, entries.size());
+        assertEquals("com.example.foo", entries.get(0).packageName);
+
+        tracker.clear();
+        assertTrue(file.length() > emptyLength);
+        tracker.drain();
+        assertEquals(emptyLength, file.length());
+
+        int generation = tracker.getGeneration();
+        tracker.addEvent(packageIds.intern("org.bar.baz"), 200, rules);
+        tracker.drain();
+        assertTrue(file.length() > emptyLength);
+        tracker.endSession(generation);
+        assertEquals(emptyLength, file.length());
+    }
+
+}
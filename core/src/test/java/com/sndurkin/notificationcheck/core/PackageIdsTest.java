@@ -0,0 +1,78 @@
+package com.sndurkin.notificationcheck.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class PackageIdsTest {
+
+    @Test
+    public void keepsIdsStableAcrossGrowth() {
+        PackageIds packageIds = new PackageIds();
+        int fooId = packageIds.intern("com.example.foo");
+
+        // Well past the initial capacity, so the table is copied several times.
+        int count = 1000;
+        for(int i = 0; i < count; ++i) {
+            assertEquals(i + 1, packageIds.intern("com.example.app" + i));
+        }
+        assertEquals(count + 1, packageIds.size());
+
+        assertEquals(fooId, packageIds.intern("com.example.foo"));
+        assertEquals("com.example.foo", packageIds.getName(fooId));
+        for(int i = 0; i < count; ++i) {
+            assertEquals(i + 1, packageIds.lookup("com.example.app" + i));
+            assertEquals("com.example.app" + i, packageIds.getName(i + 1));
+        }
+        assertEquals(-1, packageIds.lookup("com.example.missing"));
+    }
+
+    @Test
+    public void internsAllWithDuplicates() {
+        PackageIds packageIds = new PackageIds();
+        int existingId = packageIds.intern("org.bar.baz");
+
+        int[] ids = packageIds.internAll(new String[] { "com.example.foo", "org.bar.baz", "com.example.foo" });
+        assertEquals(ids[0], ids[2]);
+        assertEquals(existingId, ids[1]);
+        assertNotEquals(ids[0], ids[1]);
+        assertEquals(2, packageIds.size());
+        assertEquals("com.example.foo", packageIds.getName(ids[0]));
+    }
+
+    @Test
+    public void internsAllPastCapacity() {
+        PackageIds packageIds = new PackageIds();
+        String[] packageNames = new String[500];
+        for(int i = 0; i < packageNames.length; ++i) {
+            packageNames[i] = "com.example.app" + i;
+        }
+
+        int[] ids = packageIds.internAll(packageNames);
+        assertEquals(packageNames.length, packageIds.size());
+        for(int i = 0; i < packageNames.length; ++i) {
+            assertEquals(ids[i], packageIds.lookup(packageNames[i]));
+        }
+    }
+
+    @Test
+    public void looksUpOtherCharSequences() {
+        PackageIds packageIds = new PackageIds();
+        int id = packageIds.intern("com.example.foo");
+
+        StringBuilder builder = new StringBuilder("com.example.foo");
+        assertEquals(id, packageIds.lookup(builder));
+        assertEquals(id, packageIds.intern(builder));
+        assertEquals(-1, packageIds.lookup(new StringBuilder("com.example.fo")));
+
+        // Interning a new name from a mutable CharSequence keeps a copy of it.
+        builder.setLength(0);
+        builder.append("org.bar.baz");
+        int newId = packageIds.intern(builder);
+        builder.setLength(0);
+        assertEquals("org.bar.baz", packageIds.getName(newId));
+        assertEquals(newId, packageIds.lookup("org.bar.baz"));
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.sndurkin.notificationcheck.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PackageListCodecTest {
+
+    @Test
+    public void roundTrips() {
+        String[] packageNames = { "com.example.foo", "org.bar.baz", "a" };
+        String value = PackageListCodec.encode(Arrays.asList(packageNames));
+        assertEquals("v1:3:15:com.example.foo11:org.bar.baz1:a", value);
+        assertFalse(PackageListCodec.isLegacy(value));
+        assertEquals(3, PackageListCodec.count(value));
+        assertArrayEquals(packageNames, PackageListCodec.decode(value));
+    }
+
+    @Test
+    public void roundTripsEmptyList() {
+        String value = PackageListCodec.encode(Collections.<String>emptyList());
+        assertEquals(0, PackageListCodec.count(value));
+        assertEquals(0, PackageListCodec.decode(value).length);
+        assertEquals(0, PackageListCodec.decode("").length);
+        assertEquals(0, PackageListCodec.decode(null).length);
+    }
+
+    @Test
+    public void decodesAndMigratesLegacyValues() {
+        String legacy = "com.example.foo|org.bar.baz";
+        assertTrue(PackageListCodec.isLegacy(legacy));
+        assertEquals(2, PackageListCodec.count(legacy));
+
+        String[] packageNames = PackageListCodec.decode(legacy);
+        assertArrayEquals(new String[] { "com.example.foo", "org.bar.baz" }, packageNames);
+
+        String migrated = PackageListCodec.encode(Arrays.asList(packageNames));
+        assertFalse(PackageListCodec.isLegacy(migrated));
+        assertArrayEquals(packageNames, PackageListCodec.decode(migrated));
+    }
+
+    @Test
+    public void decodesSingleLegacyPackage() {
+        assertArrayEquals(new String[] { "com.example.foo" }, PackageListCodec.decode("com.example.foo"));
+    }
+
+    @Test
+    public void treatsCorruptValuesAsEmpty() {
+        assertEquals(0, PackageListCodec.decode("v1:2:15:com.example").length);
+        assertEquals(0, PackageListCodec.decode("v1:x:").length);
+        assertEquals(0, PackageListCodec.decode("v1:99999:").length);
+        assertEquals(0, PackageListCodec.count("v1:x:"));
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.sndurkin.notificationcheck.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PackageRateLimiterTest {
+
+    @Test
+    public void allowsBurstThenOnePerInterval() {
+        PackageRateLimiter limiter = new PackageRateLimiter(1000, 5);
+        for(int i = 0; i < 5; ++i) {
+            assertTrue(limiter.tryAcquire(3, 100));
+        }
+        assertFalse(limiter.tryAcquire(3, 100));
+        assertFalse(limiter.tryAcquire(3, 1099));
+        assertTrue(limiter.tryAcquire(3, 1100));
+        assertFalse(limiter.tryAcquire(3, 1100));
+    }
+
+    @Test
+    public void keepsPackagesApart() {
+        PackageRateLimiter limiter = new PackageRateLimiter(1000, 5);
+        for(int i = 0; i < 5; ++i) {
+            assertTrue(limiter.tryAcquire(3, 100));
+        }
+        assertFalse(limiter.tryAcquire(3, 100));
+
+        // Ids well past the initial capacity get buckets of their own.
+        assertTrue(limiter.tryAcquire(259, 100));
+        assertTrue(limiter.tryAcquire(100000, 100));
+        assertFalse(limiter.tryAcquire(3, 100));
+    }
+
+}
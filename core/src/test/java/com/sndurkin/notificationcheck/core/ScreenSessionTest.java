@@ -0,0 +1,87 @@
+package com.sndurkin.notificationcheck.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ScreenSessionTest {
+
+    private PackageIds packageIds;
+    private RuleTable rules;
+    private NotificationTracker tracker;
+    private ScreenSession session;
+
+    @Before
+    public void setUp() {
+        packageIds = new PackageIds();
+        rules = RuleTable.compile(packageIds, WhatToCheck.ALL_NOTIFICATIONS, new String[0],
+                                  AppRule.INCLUDE, Collections.<String, AppRule>emptyMap());
+        tracker = new NotificationTracker();
+        session = new ScreenSession(tracker, 1000);
+    }
+
+    @Test
+    public void screenOffDropsEventsUnlessScreenOnWasDebounced() {
+        addEvent("com.example.foo", 100);
+        assertTrue(session.onScreenOff(200));
+        addEvent("com.example.foo", 300);
+
+        // The screen was only on for a moment, so the events are kept.
+        assertFalse(session.onScreenOn(500));
+        assertFalse(session.onScreenOff(600));
+        assertTrue(session.onScreenOn(5000));
+        assertEquals(AppRule.PRIORITY_NORMAL, decide(true, false, 5000));
+    }
+
+    @Test
+    public void defersUntilMissedCall() {
+        session.onScreenOff(0);
+        addEvent("com.example.foo", 100);
+        assertTrue(session.onScreenOn(5000));
+        assertEquals(-1, decide(true, true, 5000));
+
+        // The events of a missed call are kept past the next SCREEN_OFF.
+        session.onCallMissed();
+        assertFalse(session.onScreenOff(6000));
+        assertTrue(session.onScreenOn(10000));
+        assertEquals(AppRule.PRIORITY_NORMAL, decide(true, false, 10000));
+    }
+
+    @Test
+    public void answeredCallDropsEvents() {
+        session.onScreenOff(0);
+        addEvent("com.example.foo", 100);
+        assertTrue(session.onScreenOn(5000));
+        assertEquals(-1, decide(true, true, 5000));
+
+        session.onCallAnswered();
+        assertTrue(session.onScreenOff(6000));
+        assertTrue(session.onScreenOn(10000));
+        assertEquals(-1, decide(true, false, 10000));
+    }
+
+    @Test
+    public void endsSessionWhenRingerIsNotSilent() {
+        session.onScreenOff(0);
+        addEvent("com.example.foo", 100);
+        assertTrue(session.onScreenOn(5000));
+        assertEquals(-1, decide(false, false, 5000));
+        assertEquals(-1, tracker.getPendingPriority(tracker.getGeneration()));
+    }
+
+    private void addEvent(String packageName, long eventTime) {
+        tracker.addEvent(packageIds.intern(packageName), eventTime, rules);
+    }
+
+    private int decide(boolean ringerSilent, boolean callRinging, long now) {
+        int generation = tracker.getGeneration();
+        tracker.drain();
+        return session.decide(generation, rules, ringerSilent, callRinging, now, -1);
+    }
+
+}
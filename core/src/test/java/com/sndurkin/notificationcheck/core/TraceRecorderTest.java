@@ -0,0 +1,83 @@
+package com.sndurkin.notificationcheck.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TraceRecorderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTripsRecords() throws IOException {
+        File file = folder.newFile();
+        TraceRecorder recorder = new TraceRecorder(file, 16);
+        recorder.record(TraceRecorder.TYPE_RINGER_MODE, 100, 0, null);
+        recorder.record(TraceRecorder.TYPE_NOTIFICATION, 200, 0, "com.example.foo");
+        recorder.record(TraceRecorder.TYPE_SCREEN_ON, 300, 0, null);
+        recorder.close();
+
+        List<TraceReader.Record> records = TraceReader.read(file);
+        assertEquals(3, records.size());
+        assertRecord(records.get(0), 0, 100, TraceRecorder.TYPE_RINGER_MODE, null);
+        assertRecord(records.get(1), 1, 200, TraceRecorder.TYPE_NOTIFICATION, "com.example.foo");
+        assertRecord(records.get(2), 2, 300, TraceRecorder.TYPE_SCREEN_ON, null);
+    }
+
+    @Test
+    public void keepsNewestRecordsAfterWrappingAround() throws IOException {
+        File file = folder.newFile();
+        TraceRecorder recorder = new TraceRecorder(file, 4);
+        for(int i = 0; i < 6; ++i) {
+            recorder.record(TraceRecorder.TYPE_NOTIFICATION, i * 100, 0, "com.example.app" + i);
+        }
+        recorder.close();
+
+        // Reopening continues after the last record.
+        recorder = new TraceRecorder(file, 4);
+        recorder.record(TraceRecorder.TYPE_CALL_STATE, 600, 1, null);
+        recorder.close();
+
+        List<TraceReader.Record> records = TraceReader.read(file);
+        assertEquals(4, records.size());
+        for(int i = 0; i < 3; ++i) {
+            assertRecord(records.get(i), i + 3, (i + 3) * 100, TraceRecorder.TYPE_NOTIFICATION, "com.example.app" + (i + 3));
+        }
+        assertRecord(records.get(3), 6, 600, TraceRecorder.TYPE_CALL_STATE, null);
+        assertEquals(1, records.get(3).arg);
+    }
+
+    @Test
+    public void truncatesOnlyVeryLongNames() throws IOException {
+        StringBuilder longName = new StringBuilder("com.example");
+        while(longName.length() < 200) {
+            longName.append(".segment");
+        }
+        String realisticName = "com.google.android.apps.messaging.shared.notifications.service";
+
+        File file = folder.newFile();
+        TraceRecorder recorder = new TraceRecorder(file, 4);
+        recorder.record(TraceRecorder.TYPE_NOTIFICATION, 100, 0, realisticName);
+        recorder.record(TraceRecorder.TYPE_NOTIFICATION, 200, 0, longName);
+        recorder.close();
+
+        List<TraceReader.Record> records = TraceReader.read(file);
+        assertEquals(realisticName, records.get(0).packageName);
+        assertEquals(longName.substring(0, TraceRecorder.MAX_NAME_LENGTH), records.get(1).packageName);
+    }
+
+    private static void assertRecord(TraceReader.Record record, long sequence, long eventTime, byte type, String packageName) {
+        assertEquals(sequence, record.sequence);
+        assertEquals(eventTime, record.eventTime);
+        assertEquals(type, record.type);
+        assertEquals(packageName, record.packageName);
+    }
+
+}
@@ -0,0 +1,277 @@
+package com.sndurkin.notificationcheck;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// This is a persistent catalog of the installed applications and their labels, so the
+// application list doesn't have to be built from scratch every time NotificationListPreference
+// is opened. It's read from disk in one go and then kept up to date incrementally by
+// PackageChangeReceiver. Changes that were missed, e.g. while the application was
+// force-stopped, are caught up on by reconcile(), which compares each application's
+// package file against the time recorded for it. Labels depend on the locale, so the
+// catalog records the one they were resolved in and is dropped when it no longer matches.
+public class AppCatalog {
+
+    private static final String FILE_NAME = "app_catalog.bin";
+    private static final int FILE_VERSION = 2;
+
+    private static AppCatalog instance;
+
+    private final File file;
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+    private boolean loaded = false;
+    // The locale the labels were resolved in.
+    private String locale;
+
+    // Changes are applied and saved on this thread, one at a time and in order.
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private boolean savePending = false;
+
+    public static synchronized AppCatalog getInstance(Context context) {
+        if(instance == null) {
+            instance = new AppCatalog(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AppCatalog(Context context) {
+        file = new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    // Reads the catalog from disk unless that's already been done. Returns false if there's
+    // no usable catalog yet, or its labels are in another locale than the current one, in
+    // which case it has to be built with putAll() and save().
+    // This does file I/O, so it shouldn't be called on the main thread.
+    public synchronized boolean load() {
+        String currentLocale = Locale.getDefault().toString();
+        if(loaded) {
+            if(currentLocale.equals(locale)) {
+                return true;
+            }
+            invalidate();
+        }
+        if(!file.exists()) {
+            return false;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if(in.readInt() != FILE_VERSION || !in.readUTF().equals(currentLocale)) {
+                return false;
+            }
+            locale = currentLocale;
+
+            int count = in.readInt();
+            for(int i = 0; i < count; ++i) {
+                Entry entry = new Entry(in.readUTF(), in.readUTF(), in.readLong());
+                entries.put(entry.packageName, entry);
+            }
+            loaded = true;
+        }
+        catch(IOException e) {
+            //Log.d("NotificationCheck", "Error reading the app catalog: " + e.getMessage());
+            entries.clear();
+        }
+        finally {
+            closeQuietly(in);
+        }
+        return loaded;
+    }
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<Entry>(entries.values());
+    }
+
+    // Adds the entries of a full scan, whose labels were resolved in the current locale.
+    public synchronized void putAll(List<Entry> newEntries) {
+        for(Entry entry : newEntries) {
+            entries.put(entry.packageName, entry);
+        }
+        locale = Locale.getDefault().toString();
+        loaded = true;
+    }
+
+    // Drops the catalog, in memory and on disk, when the locale changes.
+    public synchronized void invalidate() {
+        entries.clear();
+        loaded = false;
+        locale = null;
+        file.delete();
+    }
+
+    // Returns true if the entry is new or differs from the one it replaced.
+    public synchronized boolean put(Entry entry) {
+        Entry previous = entries.put(entry.packageName, entry);
+        return previous == null || previous.lastUpdateTime != entry.lastUpdateTime || !previous.label.equals(entry.label);
+    }
+
+    // Returns true if the package was in the catalog.
+    public synchronized boolean remove(String packageName) {
+        return entries.remove(packageName) != null;
+    }
+
+    // Returns true if the catalog's entry for the given application was made from the
+    // package file that's currently installed, in which case its label is still good.
+    public synchronized boolean isUpToDate(ApplicationInfo appInfo) {
+        Entry entry = entries.get(appInfo.packageName);
+        return entry != null && entry.lastUpdateTime == getLastUpdateTime(appInfo);
+    }
+
+    // Brings the loaded catalog in line with the installed applications and returns what
+    // changed. Only the labels of applications that are new or whose package file changed
+    // are resolved again. This scans every installed application, so it should be run on the
+    // catalog's worker thread, after whatever was already in the catalog has been shown.
+    public Changes reconcile(PackageManager pm) {
+        List<ApplicationInfo> appInfos = pm.getInstalledApplications(0);
+        Set<String> installedPackages = new HashSet<String>();
+        Changes changes = new Changes();
+        for(ApplicationInfo appInfo : appInfos) {
+            installedPackages.add(appInfo.packageName);
+            if(!isUpToDate(appInfo)) {
+                Entry entry = createEntry(pm, appInfo);
+                if(put(entry)) {
+                    changes.updated.add(entry);
+                }
+            }
+        }
+
+        synchronized(this) {
+            Iterator<String> iter = entries.keySet().iterator();
+            while(iter.hasNext()) {
+                String packageName = iter.next();
+                if(!installedPackages.contains(packageName)) {
+                    iter.remove();
+                    changes.removed.add(packageName);
+                }
+            }
+        }
+        return changes;
+    }
+
+    // Runs the given task on the catalog's worker thread.
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    // Saves the catalog on its worker thread, unless a save is already waiting there, so a
+    // burst of changes is only written out once.
+    public synchronized void saveLater() {
+        if(savePending) {
+            return;
+        }
+        savePending = true;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                save();
+            }
+        });
+    }
+
+    // Writes the catalog to disk, replacing the previous file only once the new one is complete.
+    public synchronized void save() {
+        savePending = false;
+        if(!loaded) {
+            // The catalog was dropped since the save was scheduled.
+            return;
+        }
+        File tempFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(FILE_VERSION);
+            out.writeUTF(locale);
+            out.writeInt(entries.size());
+            for(Entry entry : entries.values()) {
+                out.writeUTF(entry.packageName);
+                out.writeUTF(entry.label);
+                out.writeLong(entry.lastUpdateTime);
+            }
+            out.close();
+            out = null;
+
+            if(!tempFile.renameTo(file)) {
+                tempFile.delete();
+            }
+        }
+        catch(IOException e) {
+            //Log.d("NotificationCheck", "Error writing the app catalog: " + e.getMessage());
+            tempFile.delete();
+        }
+        finally {
+            closeQuietly(out);
+        }
+    }
+
+    // Builds a catalog entry for the given application; this resolves its label, which is
+    // the expensive part of building the catalog.
+    public static Entry createEntry(PackageManager pm, ApplicationInfo appInfo) {
+        String label = pm.getApplicationLabel(appInfo).toString().trim();
+        return new Entry(appInfo.packageName, label, getLastUpdateTime(appInfo));
+    }
+
+    // The package file is replaced whenever the application is updated.
+    private static long getLastUpdateTime(ApplicationInfo appInfo) {
+        return appInfo.sourceDir != null ? new File(appInfo.sourceDir).lastModified() : 0;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if(closeable != null) {
+            try {
+                closeable.close();
+            }
+            catch(IOException e) {
+                // Nothing more we can do.
+            }
+        }
+    }
+
+    // The entries reconcile() added or updated, and the packages it removed.
+    public static class Changes {
+        public final List<Entry> updated = new ArrayList<Entry>();
+        public final List<String> removed = new ArrayList<String>();
+
+        public boolean isEmpty() {
+            return updated.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    public static class Entry {
+        public final String packageName;
+        public final String label;
+        public final long lastUpdateTime;
+
+        public Entry(String packageName, String label, long lastUpdateTime) {
+            this.packageName = packageName;
+            this.label = label;
+            this.lastUpdateTime = lastUpdateTime;
+        }
+    }
+
+}
@@ -0,0 +1,156 @@
+package com.sndurkin.notificationcheck;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.ImageView;
+
+import com.sndurkin.notificationcheck.core.Metrics;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// This is a memory-bounded LRU cache of application icons, downscaled to the size they're
+// shown at in NotificationListPreference. Icons are loaded on a background thread; until
+// one is ready, a placeholder is shown in its place.
+public class AppIconCache {
+
+    // The fraction of the application's memory class the cache may use.
+    private static final int MEMORY_CLASS_DIVISOR = 16;
+
+    private static AppIconCache instance;
+
+    private final PackageManager pm;
+    private final int iconSize;
+    private final long maxBytes;
+    private final Drawable placeholder;
+
+    private final LinkedHashMap<String, Bitmap> icons = new LinkedHashMap<String, Bitmap>(32, 0.75f, true);
+    private long currentBytes = 0;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    public static synchronized AppIconCache getInstance(Context context) {
+        if(instance == null) {
+            instance = new AppIconCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // Drops the cached icon of the given package, if there is one, after it's been updated or removed.
+    public static synchronized void invalidate(String packageName) {
+        if(instance != null) {
+            instance.remove(packageName);
+        }
+    }
+
+    private AppIconCache(Context context) {
+        pm = context.getPackageManager();
+        iconSize = context.getResources().getDimensionPixelSize(R.dimen.row_icon_size);
+        placeholder = pm.getDefaultActivityIcon();
+
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        maxBytes = (long) am.getMemoryClass() * 1024 * 1024 / MEMORY_CLASS_DIVISOR;
+    }
+
+    // Shows the icon of the given package in the given view, loading it in the background if
+    // it isn't cached yet. This must be called on the main thread. The view may be rebound to
+    // another package before the icon is ready, in which case it's left alone.
+    public void bind(final ImageView view, final String packageName) {
+        view.setTag(packageName);
+
+        Bitmap icon = get(packageName);
+        if(icon != null) {
+            Metrics.getInstance().iconCacheHits.incrementAndGet();
+            view.setImageBitmap(icon);
+            return;
+        }
+
+        Metrics.getInstance().iconCacheMisses.incrementAndGet();
+        view.setImageDrawable(placeholder);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap icon = load(packageName);
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(packageName.equals(view.getTag())) {
+                            view.setImageBitmap(icon);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private synchronized Bitmap get(String packageName) {
+        return icons.get(packageName);
+    }
+
+    private synchronized void put(String packageName, Bitmap icon) {
+        Bitmap previous = icons.put(packageName, icon);
+        if(previous != null) {
+            currentBytes -= sizeOf(previous);
+        }
+        currentBytes += sizeOf(icon);
+
+        Iterator<Map.Entry<String, Bitmap>> iter = icons.entrySet().iterator();
+        while(currentBytes > maxBytes && iter.hasNext()) {
+            Map.Entry<String, Bitmap> eldest = iter.next();
+            if(eldest.getValue() == icon) {
+                break;
+            }
+            currentBytes -= sizeOf(eldest.getValue());
+            iter.remove();
+        }
+    }
+
+    private synchronized void remove(String packageName) {
+        Bitmap previous = icons.remove(packageName);
+        if(previous != null) {
+            currentBytes -= sizeOf(previous);
+        }
+    }
+
+    // Loads and downscales the icon of the given package. This is called on the background thread.
+    private Bitmap load(String packageName) {
+        Bitmap icon = get(packageName);
+        if(icon != null) {
+            // Another view asked for the same icon before it was ready.
+            return icon;
+        }
+
+        long startTime = System.nanoTime();
+        Drawable drawable;
+        try {
+            drawable = pm.getApplicationIcon(packageName);
+        }
+        catch(PackageManager.NameNotFoundException e) {
+            drawable = pm.getDefaultActivityIcon();
+        }
+
+        icon = Bitmap.createBitmap(iconSize, iconSize, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(icon);
+        drawable.setBounds(0, 0, iconSize, iconSize);
+        drawable.draw(canvas);
+
+        put(packageName, icon);
+        Metrics.getInstance().iconLoadTime.record((System.nanoTime() - startTime) / 1000);
+        return icon;
+    }
+
+    private static long sizeOf(Bitmap bitmap) {
+        return (long) bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+}
@@ -0,0 +1,149 @@
+package com.sndurkin.notificationcheck;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.database.ContentObserver;
+import android.media.AudioManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.provider.Settings;
+import android.util.Log;
+
+// This is a snapshot of everything about the device and the settings that the SCREEN_ON
+// path needs besides the rules: whether the application is active, whether the ringer is
+// set to silent, whether the accessibility service is enabled and the screen debounce
+// window. It's kept up to date by the RINGER_MODE_CHANGED broadcast, a SharedPreferences
+// listener and a ContentObserver on the accessibility settings, and each change publishes
+// a new immutable instance, so readers never call into system services or parse anything.
+public class DeviceState {
+
+    // The default for pref_screen_debounce, in milliseconds.
+    private static final String SCREEN_DEBOUNCE_DEFAULT = "1000";
+
+    private static volatile DeviceState current;
+
+    // These are only ever replaced on the main thread, where all the updates arrive.
+    private static BroadcastReceiver ringerModeReceiver;
+    private static SharedPreferences.OnSharedPreferenceChangeListener preferenceListener;
+    private static ContentObserver accessibilityObserver;
+
+    public final boolean active;
+    public final boolean ringerSilent;
+    public final boolean notificationServiceEnabled;
+    public final long screenDebounceMillis;
+
+    private DeviceState(boolean active, boolean ringerSilent, boolean notificationServiceEnabled, long screenDebounceMillis) {
+        this.active = active;
+        this.ringerSilent = ringerSilent;
+        this.notificationServiceEnabled = notificationServiceEnabled;
+        this.screenDebounceMillis = screenDebounceMillis;
+    }
+
+    public static DeviceState get(Context context) {
+        DeviceState state = current;
+        if(state == null) {
+            state = init(context.getApplicationContext());
+        }
+        return state;
+    }
+
+    private static synchronized DeviceState init(final Context context) {
+        if(current != null) {
+            return current;
+        }
+
+        final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        final AudioManager am = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        current = new DeviceState(preferences.getBoolean("pref_active", false),
+                                  am.getRingerMode() == AudioManager.RINGER_MODE_SILENT,
+                                  readNotificationServiceEnabled(context),
+                                  readScreenDebounceMillis(preferences));
+
+        ringerModeReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                int ringerMode = intent.getIntExtra(AudioManager.EXTRA_RINGER_MODE, AudioManager.RINGER_MODE_NORMAL);
+                TraceLog.ringerMode(ringerMode);
+                update(context, null, ringerMode == AudioManager.RINGER_MODE_SILENT, null, null);
+            }
+        };
+        context.registerReceiver(ringerModeReceiver, new IntentFilter(AudioManager.RINGER_MODE_CHANGED_ACTION));
+
+        preferenceListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+            @Override
+            public void onSharedPreferenceChanged(SharedPreferences preferences, String key) {
+                if("pref_active".equals(key)) {
+                    update(context, preferences.getBoolean("pref_active", false), null, null, null);
+                }
+                else if("pref_screen_debounce".equals(key)) {
+                    update(context, null, null, null, readScreenDebounceMillis(preferences));
+                }
+            }
+        };
+        preferences.registerOnSharedPreferenceChangeListener(preferenceListener);
+
+        accessibilityObserver = new ContentObserver(new Handler(Looper.getMainLooper())) {
+            @Override
+            public void onChange(boolean selfChange) {
+                update(context, null, null, readNotificationServiceEnabled(context), null);
+            }
+        };
+        context.getContentResolver().registerContentObserver(Settings.Secure.getUriFor(Settings.Secure.ACCESSIBILITY_ENABLED), false, accessibilityObserver);
+        context.getContentResolver().registerContentObserver(Settings.Secure.getUriFor(Settings.Secure.ENABLED_ACCESSIBILITY_SERVICES), false, accessibilityObserver);
+
+        return current;
+    }
+
+    // Publishes a new snapshot with the given fields changed; null ones are kept as they are.
+    private static synchronized void update(Context context, Boolean active, Boolean ringerSilent,
+                                            Boolean notificationServiceEnabled, Long screenDebounceMillis) {
+        DeviceState state = get(context);
+        current = new DeviceState(active != null ? active : state.active,
+                                  ringerSilent != null ? ringerSilent : state.ringerSilent,
+                                  notificationServiceEnabled != null ? notificationServiceEnabled : state.notificationServiceEnabled,
+                                  screenDebounceMillis != null ? screenDebounceMillis : state.screenDebounceMillis);
+    }
+
+    private static long readScreenDebounceMillis(SharedPreferences preferences) {
+        try {
+            return Long.parseLong(preferences.getString("pref_screen_debounce", SCREEN_DEBOUNCE_DEFAULT));
+        }
+        catch(NumberFormatException e) {
+            return Long.parseLong(SCREEN_DEBOUNCE_DEFAULT);
+        }
+    }
+
+    private static boolean readNotificationServiceEnabled(Context context) {
+        int accessibilityEnabled = 0;
+        try {
+            accessibilityEnabled = Settings.Secure.getInt(context.getContentResolver(), Settings.Secure.ACCESSIBILITY_ENABLED);
+        }
+        catch (Settings.SettingNotFoundException e) {
+            //Log.d("NotificationCheck", "Error finding setting, default accessibility to not found: " + e.getMessage());
+        }
+
+        if (accessibilityEnabled == 1) {
+            //Log.d("NotificationCheck", "Accessibility is enabled");
+
+            String accessibilityServices = Settings.Secure.getString(context.getContentResolver(), Settings.Secure.ENABLED_ACCESSIBILITY_SERVICES);
+            //Log.d("NotificationCheck", "Enabled accessibility services: " + accessibilityServices);
+            if (accessibilityServices != null) {
+                for(String accessibilityService : accessibilityServices.split(":")) {
+                    if (accessibilityService.equalsIgnoreCase(NotificationService.SERVICE_NAME)){
+                        return true;
+                    }
+                }
+            }
+        }
+        else {
+            //Log.d("NotificationCheck", "Accessibility is disabled");
+        }
+
+        return false;
+    }
+
+}
@@ -1,77 +1,139 @@
 package com.sndurkin.notificationcheck;
 
-import android.app.AlertDialog.Builder;
+import android.app.AlertDialog;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.SharedPreferences;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
-import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.preference.DialogPreference;
 import android.preference.PreferenceManager;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.AttributeSet;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.BaseAdapter;
 import android.widget.CheckBox;
+import android.widget.EditText;
 import android.widget.ImageView;
+import android.widget.ListView;
+import android.widget.ProgressBar;
 import android.widget.TextView;
 
+import com.sndurkin.notificationcheck.core.App;
+import com.sndurkin.notificationcheck.core.AppRule;
+import com.sndurkin.notificationcheck.core.AppSearchIndex;
+import com.sndurkin.notificationcheck.core.AppSorter;
+import com.sndurkin.notificationcheck.core.Metrics;
+import com.sndurkin.notificationcheck.core.PackageIds;
+import com.sndurkin.notificationcheck.core.PackageListCodec;
+
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 // This is a custom multi-select ListPreference (which extends DialogPreference because it
 // implements its own list view) which displays all installed applications along with
-// their icons.
+// their icons. Long-pressing an application lets the user pick how strongly the phone
+// vibrates for it, which is stored as a per-application rule in pref_rules.
 public class NotificationListPreference extends DialogPreference {
 
-    private static Map<String, Drawable> CACHED_APP_ICONS = new HashMap<String, Drawable>();
-
-    private static final String SEPARATOR = "|";
-    private static final String SEPARATOR_REGEX = "\\|";
+    // Application labels are resolved in batches on this pool.
+    private static final int LABEL_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final int LABEL_BATCH_SIZE = 16;
+    private static ExecutorService labelExecutor;
 
     private String value;
-    private CharSequence[] entries;
-    private CharSequence[] entryValues;
-    private boolean[] selectedIndices;
+    private List<App> apps = new ArrayList<App>();
+    private boolean loading = false;
+    private int loadGeneration = 0;
+    private long loadStartTime;
+    private AppSearchIndex searchIndex;
+    private AppAdapter adapter;
+    private ProgressBar progressBar;
+
+    private final Handler handler = new Handler();
 
     public NotificationListPreference(Context context, AttributeSet attrs) {
         super(context, attrs);
+        setDialogLayoutResource(R.layout.list_preference_dialog);
     }
 
     public NotificationListPreference(Context context) {
         this(context, null);
     }
 
+    // The summary only needs the number of selected packages, which is stored along with
+    // them, so the application list isn't loaded until the dialog is opened.
     @Override
     protected View onCreateView(ViewGroup parent) {
         View view = super.onCreateView(parent);
-        updateEntries();
         updateSummary();
         return view;
     }
 
     @Override
-    protected void onPrepareDialogBuilder(Builder builder) {
+    protected void onBindDialogView(View view) {
+        super.onBindDialogView(view);
+
+        progressBar = (ProgressBar) view.findViewById(R.id.loading_progress);
         updateEntries();
-        builder.setAdapter(new AppAdapter(getContext()), null);
+        adapter = new AppAdapter(getContext());
+        ((ListView) view.findViewById(R.id.app_list)).setAdapter(adapter);
+
+        EditText searchText = (EditText) view.findViewById(R.id.search_text);
+        searchText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                if(adapter != null) {
+                    adapter.setQuery(s.toString());
+                }
+            }
+        });
     }
 
     @Override
     protected void onDialogClosed(boolean positiveResult) {
+        adapter = null;
+        progressBar = null;
+
         ArrayList<String> values = new ArrayList<String>();
-        if (positiveResult && entryValues != null) {
-            for(int i = 0; i < entryValues.length; ++i) {
-                if(selectedIndices[i]) {
-                    values.add(entryValues[i].toString());
+        if (positiveResult) {
+            Set<String> loadedPackages = new HashSet<String>();
+            for(App app : apps) {
+                loadedPackages.add(app.packageName);
+                if(app.selected) {
+                    values.add(app.packageName);
+                }
+            }
+
+            if(loading) {
+                // Keep the selected applications which haven't been loaded yet.
+                for(String packageName : fetchList()) {
+                    if(!loadedPackages.contains(packageName)) {
+                        values.add(packageName);
+                    }
                 }
             }
 
@@ -86,163 +148,313 @@ public class NotificationListPreference extends DialogPreference {
         if(restoreValue) {
             SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(getContext());
             value = preferences.getString("pref_notifications", "");
+            if(value.length() > 0 && PackageListCodec.isLegacy(value)) {
+                // This is the only place the original format is migrated. persistString()
+                // saves asynchronously where the platform supports it.
+                persistString(value = PackageListCodec.encode(Arrays.asList(PackageListCodec.decode(value))));
+            }
         }
         else {
             value = (String) defaultValue;
         }
     }
 
-    // Fetches all applications and lists them as entries.
+    // Fetches all applications and lists them as entries. They're normally read from the
+    // AppCatalog and shown right away; any changes it missed are caught up on afterwards and
+    // applied to the list. If it hasn't been built yet, all installed applications are
+    // scanned and their labels are resolved in parallel and streamed into the list as they
+    // come in. Once they're all in, duplicate names are disambiguated and the list is sorted.
+    //
+    // Packages are matched against the selection by their PackageIds id; interning all of
+    // them here also means the notification path never has to grow the table for them.
     private void updateEntries() {
-        final PackageManager pm = getContext().getPackageManager();
-        List<ApplicationInfo> apps = pm.getInstalledApplications(0);
-
-        Set<String> duplicateAppNames = findDuplicateAppNames(apps);
-
-        List<String> selectedPackages = fetchList();
-        List<App> sortedApps = new ArrayList<App>();
-        for (ApplicationInfo appInfo : apps) {
-            App app = new App();
-            app.name = pm.getApplicationLabel(appInfo).toString().trim();
-            app.packageName = appInfo.packageName;
+        final int generation = ++loadGeneration;
+        final BitSet selectedPackages = new BitSet();
+        for(int packageId : PackageIds.getInstance().internAll(fetchList())) {
+            selectedPackages.set(packageId);
+        }
+        final AppCatalog catalog = AppCatalog.getInstance(getContext());
+        apps = new ArrayList<App>();
+        searchIndex = null;
+        loading = true;
+        loadStartTime = SystemClock.uptimeMillis();
+        if(progressBar != null) {
+            progressBar.setVisibility(View.VISIBLE);
+        }
 
-            if(app.name.equals(app.packageName)) {
-                // Don't include applications that don't have a proper name.
-                continue;
+        getLabelExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                if(catalog.load()) {
+                    final List<AppCatalog.Entry> entries = catalog.getEntries();
+                    final int[] packageIds = internAll(entries);
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if(generation == loadGeneration) {
+                                addEntries(entries, packageIds, selectedPackages);
+                                finishLoading();
+                            }
+                        }
+                    });
+                    reconcileCatalog(generation, selectedPackages, catalog);
+                }
+                else {
+                    scanApplications(generation, selectedPackages, catalog);
+                }
             }
+        });
+    }
 
-            if(duplicateAppNames.contains(app.name)) {
-                // If there's a duplicate application name, we want to append the package name
-                // to eliminate confusion.
-                app.name = app.name + " (" + app.packageName + ")";
+    // Catches the catalog up on changes it missed, e.g. while the application was
+    // force-stopped, and applies them to the list once it's been shown.
+    private void reconcileCatalog(final int generation, final BitSet selectedPackages, final AppCatalog catalog) {
+        final PackageManager pm = getContext().getPackageManager();
+        catalog.execute(new Runnable() {
+            @Override
+            public void run() {
+                final AppCatalog.Changes changes = catalog.reconcile(pm);
+                if(changes.isEmpty()) {
+                    return;
+                }
+                catalog.saveLater();
+
+                final int[] packageIds = internAll(changes.updated);
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(generation == loadGeneration) {
+                            applyChanges(changes, packageIds, selectedPackages);
+                        }
+                    }
+                });
             }
+        });
+    }
 
-            sortedApps.add(app);
+    // Replaces the rows of the updated and removed applications. Applications that were
+    // already listed keep their selection, since the user may have changed it since.
+    private void applyChanges(AppCatalog.Changes changes, int[] packageIds, BitSet selectedPackages) {
+        Set<String> replacedPackages = new HashSet<String>(changes.removed);
+        for(AppCatalog.Entry entry : changes.updated) {
+            replacedPackages.add(entry.packageName);
         }
 
-        // Sort by checked first, then alphabetically.
-        Collections.sort(sortedApps, new AppComparator(selectedPackages));
-        List<String> appNames = new ArrayList<String>();
-        List<String> appPackageNames = new ArrayList<String>();
-        for(App app : sortedApps) {
-            appNames.add(app.name);
-            appPackageNames.add(app.packageName);
+        Map<String, Boolean> previousSelection = new HashMap<String, Boolean>();
+        Iterator<App> iter = apps.iterator();
+        while(iter.hasNext()) {
+            App app = iter.next();
+            if(replacedPackages.contains(app.packageName)) {
+                previousSelection.put(app.packageName, app.selected);
+                iter.remove();
+            }
         }
 
-        entries = appNames.toArray(new String[0]);
-        entryValues = appPackageNames.toArray(new String[0]);
-        selectedIndices = new boolean[appNames.size()];
-
-        restoreSelectedEntries();
+        addEntries(changes.updated, packageIds, selectedPackages);
+        for(App app : apps) {
+            Boolean selected = previousSelection.get(app.packageName);
+            if(selected != null) {
+                app.selected = selected;
+            }
+        }
+        sortAndIndex();
     }
 
-    private void restoreSelectedEntries() {
-        for(int i = 0; i < selectedIndices.length; ++i) {
-            selectedIndices[i] = false;
+    // Builds the catalog from all installed applications, streaming them into the list as
+    // their labels are resolved. This is called on a worker thread.
+    private void scanApplications(final int generation, final BitSet selectedPackages, final AppCatalog catalog) {
+        final PackageManager pm = getContext().getPackageManager();
+        final List<ApplicationInfo> appInfos = pm.getInstalledApplications(0);
+        final List<AppCatalog.Entry> scannedEntries = new ArrayList<AppCatalog.Entry>(appInfos.size());
+
+        final int batchCount = (appInfos.size() + LABEL_BATCH_SIZE - 1) / LABEL_BATCH_SIZE;
+        if(batchCount == 0) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if(generation == loadGeneration) {
+                        finishLoading();
+                    }
+                }
+            });
+            return;
         }
 
-        List<String> values = fetchList();
-        if(!values.isEmpty()) {
-            for(int i = 0; i < entryValues.length; ++i) {
-                if(values.contains(entryValues[i])) {
-                    selectedIndices[i] = true;
+        final int[] remainingBatches = { batchCount };
+        for(int i = 0; i < batchCount; ++i) {
+            final List<ApplicationInfo> batch = appInfos.subList(i * LABEL_BATCH_SIZE, Math.min(appInfos.size(), (i + 1) * LABEL_BATCH_SIZE));
+            getLabelExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    final List<AppCatalog.Entry> entries = new ArrayList<AppCatalog.Entry>(batch.size());
+                    for(ApplicationInfo appInfo : batch) {
+                        entries.add(AppCatalog.createEntry(pm, appInfo));
+                    }
+                    final int[] packageIds = internAll(entries);
+
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if(generation != loadGeneration) {
+                                // A newer load has started since.
+                                return;
+                            }
+
+                            scannedEntries.addAll(entries);
+                            addEntries(entries, packageIds, selectedPackages);
+                            if(--remainingBatches[0] == 0) {
+                                finishLoading();
+                                catalog.putAll(scannedEntries);
+                                catalog.saveLater();
+                            }
+                            else if(adapter != null) {
+                                adapter.notifyDataSetChanged();
+                            }
+                        }
+                    });
                 }
-            }
+            });
         }
     }
 
-    public static List<String> extractListFromPref(String value) {
-        if(value == null || value.equals("")) {
-            return new ArrayList<String>();
+    private void addEntries(List<AppCatalog.Entry> entries, int[] packageIds, BitSet selectedPackages) {
+        for(int i = 0; i < entries.size(); ++i) {
+            AppCatalog.Entry entry = entries.get(i);
+            if(entry.label.equals(entry.packageName)) {
+                // Don't include applications that don't have a proper name.
+                continue;
+            }
+
+            apps.add(new App(entry.label, entry.packageName, selectedPackages.get(packageIds[i])));
         }
-        return Arrays.asList(value.split(SEPARATOR_REGEX));
     }
 
-    // Extracts the serialized string saved in SharedPreferences.
-    private List<String> fetchList() {
-        return extractListFromPref(value);
+    // Interns the package names of the given entries. This is called on a worker thread.
+    private static int[] internAll(List<AppCatalog.Entry> entries) {
+        String[] packageNames = new String[entries.size()];
+        for(int i = 0; i < packageNames.length; ++i) {
+            packageNames[i] = entries.get(i).packageName;
+        }
+        return PackageIds.getInstance().internAll(packageNames);
     }
 
-    // Joins the string and stores the serialized value in SharedPreferences.
-    private void saveList(List<String> values) {
-        Iterator<String> iter = values.iterator();
-        StringBuilder sb = new StringBuilder();
-        if(iter.hasNext()) {
-            sb.append(iter.next());
-        }
-        while(iter.hasNext()) {
-            sb.append(SEPARATOR).append(iter.next());
+    private void finishLoading() {
+        loading = false;
+        if(progressBar != null) {
+            progressBar.setVisibility(View.GONE);
         }
-        persistString(value = sb.toString());
-        updateSummary();
+        Metrics.getInstance().labelLoadTime.record(SystemClock.uptimeMillis() - loadStartTime);
+        sortAndIndex();
     }
 
-    private void updateSummary() {
-        List<String> values = fetchList();
-        if(values.isEmpty()) {
-            setSummary(getContext().getString(R.string.pref_notifications_summary_pattern_none));
+    private void sortAndIndex() {
+        // Sort by checked first, then alphabetically.
+        AppSorter.sort(apps, Locale.getDefault());
+
+        List<String> names = new ArrayList<String>(apps.size());
+        List<String> packageNames = new ArrayList<String>(apps.size());
+        for(App app : apps) {
+            names.add(app.name);
+            packageNames.add(app.packageName);
         }
-        else {
-            setSummary(String.format(getContext().getString(R.string.pref_notifications_summary_pattern), values.size()));
+        searchIndex = new AppSearchIndex(names, packageNames);
+
+        if(adapter != null) {
+            adapter.applyQuery();
         }
     }
 
-    private Set<String> findDuplicateAppNames(List<ApplicationInfo> apps) {
-        final PackageManager pm = getContext().getPackageManager();
-
-        HashSet<String> appNames = new HashSet<String>();
-        HashSet<String> duplicateAppNames = new HashSet<String>();
-        for(ApplicationInfo app : apps) {
-            String appName = pm.getApplicationLabel(app).toString().trim();
-            if(appNames.contains(appName)) {
-                duplicateAppNames.add(appName);
-            }
-            appNames.add(appName);
+    private static synchronized ExecutorService getLabelExecutor() {
+        if(labelExecutor == null) {
+            labelExecutor = Executors.newFixedThreadPool(LABEL_THREADS);
         }
-        return duplicateAppNames;
+        return labelExecutor;
     }
 
-    class App {
-        public String name;
-        public String packageName;
+    // Reads the selected packages stored in the given preferences, in either format. This
+    // never writes; values in the original format are migrated by onSetInitialValue().
+    public static String[] readSelectedPackages(SharedPreferences preferences) {
+        return PackageListCodec.decode(preferences.getString("pref_notifications", ""));
     }
 
-    class AppComparator implements Comparator<App> {
+    // Extracts the serialized string saved in SharedPreferences.
+    private String[] fetchList() {
+        return PackageListCodec.decode(value);
+    }
 
-        private List<String> selectedPackages;
+    // Encodes the list and stores the serialized value in SharedPreferences.
+    private void saveList(List<String> values) {
+        persistString(value = PackageListCodec.encode(values));
+        updateSummary();
+    }
 
-        public AppComparator(List<String> selectedPackages) {
-            this.selectedPackages = selectedPackages;
+    private void updateSummary() {
+        int count = PackageListCodec.count(value);
+        if(count == 0) {
+            setSummary(getContext().getString(R.string.pref_notifications_summary_pattern_none));
         }
-
-        @Override
-        public int compare(App a, App b) {
-            boolean selectedA = selectedPackages.contains(a.packageName);
-            boolean selectedB = selectedPackages.contains(b.packageName);
-            if(selectedA && !selectedB) {
-                return -1;
-            }
-            else if(!selectedA && selectedB) {
-                return 1;
-            }
-
-            return a.name.compareTo(b.name);
+        else {
+            setSummary(String.format(getContext().getString(R.string.pref_notifications_summary_pattern), count));
         }
     }
 
+    // Lets the user pick the vibration priority of the given application. This is saved
+    // right away, independently of the selection, which is only saved with the dialog.
+    private void showPriorityDialog(final App app) {
+        final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(getContext());
+        final Map<String, AppRule> rules = AppRule.decodeAll(preferences.getString("pref_rules", ""));
+        AppRule rule = rules.get(app.packageName);
+        int priority = rule != null && rule.priority != AppRule.INHERIT ? rule.priority : AppRule.PRIORITY_NORMAL;
+
+        new AlertDialog.Builder(getContext())
+            .setTitle(String.format(getContext().getString(R.string.pref_priority_title), app.name))
+            .setSingleChoiceItems(R.array.pref_priority_displays, priority, new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    if(which == AppRule.PRIORITY_NORMAL) {
+                        rules.remove(app.packageName);
+                    }
+                    else {
+                        rules.put(app.packageName, new AppRule(true, which, AppRule.INHERIT, AppRule.INHERIT, AppRule.INHERIT));
+                    }
+                    preferences.edit()
+                               .putString("pref_rules", AppRule.encodeAll(rules))
+                               .commit();
+                    dialog.dismiss();
+                }
+            })
+            .show();
+    }
+
     class AppAdapter extends BaseAdapter {
 
         private LayoutInflater inflater;
-        private PackageManager pm;
+        private AppIconCache iconCache;
+
+        private String query = "";
+        // The positions in the application list of the rows shown, or null to show all of them.
+        private int[] visiblePositions = null;
 
         public AppAdapter(Context context) {
             inflater = LayoutInflater.from(context);
-            pm = context.getPackageManager();
+            iconCache = AppIconCache.getInstance(context);
+        }
+
+        // Filters the rows by the given query. Until the application list is fully loaded,
+        // all rows are shown and the query is applied once it is.
+        void setQuery(String query) {
+            this.query = query;
+            applyQuery();
+        }
+
+        void applyQuery() {
+            visiblePositions = searchIndex != null ? searchIndex.search(query) : null;
+            notifyDataSetChanged();
         }
 
         @Override
         public int getCount() {
-            return entries.length;
+            return visiblePositions != null ? visiblePositions.length : apps.size();
         }
 
         @Override
@@ -252,64 +464,76 @@ public class NotificationListPreference extends DialogPreference {
 
         @Override
         public long getItemId(int position) {
-            return position;
+            return visiblePositions != null ? visiblePositions[position] : position;
         }
 
         @Override
         public View getView(int position, View convertView, ViewGroup parent) {
-            convertView = inflater.inflate(R.layout.list_preference_row, parent, false);
-            CustomRow holder = new CustomRow(convertView, position);
-            convertView.setTag(holder);
+            CustomRow holder;
+            if(convertView == null) {
+                convertView = inflater.inflate(R.layout.list_preference_row, parent, false);
+                holder = new CustomRow(convertView);
+                convertView.setTag(holder);
+            }
+            else {
+                holder = (CustomRow) convertView.getTag();
+            }
+            holder.bind((int) getItemId(position));
 
             return convertView;
         }
 
+        // This is shared by all rows and their checkboxes, which are tagged with their CustomRow.
+        private final View.OnClickListener rowClickListener = new View.OnClickListener() {
+            public void onClick(View v) {
+                CustomRow holder = (CustomRow) v.getTag();
+                holder.row.requestFocus();
+
+                App app = apps.get(holder.position);
+                app.selected = !app.selected;
+                holder.checkbox.setChecked(app.selected);
+            }
+        };
+
+        private final View.OnLongClickListener rowLongClickListener = new View.OnLongClickListener() {
+            public boolean onLongClick(View v) {
+                CustomRow holder = (CustomRow) v.getTag();
+                showPriorityDialog(apps.get(holder.position));
+                return true;
+            }
+        };
+
         class CustomRow {
+            private View row = null;
             private ImageView iconView = null;
             private TextView textView = null;
             private CheckBox checkbox = null;
+            private int position;
 
-            CustomRow(final View row, final int position) {
+            CustomRow(View row) {
+                this.row = row;
                 row.setClickable(true);
-                row.setOnClickListener(new View.OnClickListener() {
-                    public void onClick(View v) {
-                        v.requestFocus();
-                        selectedIndices[position] = !selectedIndices[position];
-                        checkbox.setChecked(selectedIndices[position]);
-                    }
-                });
+                row.setOnClickListener(rowClickListener);
+                row.setOnLongClickListener(rowLongClickListener);
 
                 textView = (TextView) row.findViewById(R.id.row_text);
-                textView.setText(entries[position]);
 
                 iconView = (ImageView) row.findViewById(R.id.row_icon);
-
-                String packageName = entryValues[position].toString();
-                Drawable icon;
-                if(CACHED_APP_ICONS.containsKey(packageName)) {
-                    icon = CACHED_APP_ICONS.get(packageName);
-                }
-                else {
-                    try {
-                        icon = pm.getApplicationIcon(entryValues[position].toString());
-                    }
-                    catch(PackageManager.NameNotFoundException e) {
-                        icon = pm.getDefaultActivityIcon();
-                    }
-
-                    CACHED_APP_ICONS.put(packageName, icon);
-                }
-                iconView.setImageDrawable(icon);
                 iconView.setScaleType(ImageView.ScaleType.CENTER_INSIDE);
 
                 checkbox = (CheckBox) row.findViewById(R.id.row_check);
                 checkbox.setClickable(true);
-                checkbox.setOnClickListener(new View.OnClickListener() {
-                    public void onClick(View v) {
-                        row.performClick();
-                    }
-                });
-                checkbox.setChecked(selectedIndices[position]);
+                checkbox.setTag(this);
+                checkbox.setOnClickListener(rowClickListener);
+            }
+
+            void bind(int position) {
+                App app = apps.get(position);
+                this.position = position;
+
+                textView.setText(app.name);
+                iconCache.bind(iconView, app.packageName);
+                checkbox.setChecked(app.selected);
             }
         }
     }
@@ -2,22 +2,50 @@ package com.sndurkin.notificationcheck;
 
 import android.accessibilityservice.AccessibilityService;
 import android.accessibilityservice.AccessibilityServiceInfo;
+import android.app.Notification;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.util.Log;
 import android.view.accessibility.AccessibilityEvent;
 
+import com.sndurkin.notificationcheck.core.Metrics;
+import com.sndurkin.notificationcheck.core.PackageIds;
+import com.sndurkin.notificationcheck.core.RuleTable;
+
+import java.util.List;
+
 // This is an accessibility service used to monitor the phone for notifications. When it
-// receives one, it sends it to ScreenOnReceiver.
+// receives one, it sends it to ScreenOnReceiver. The service is also what keeps
+// ScreenOnReceiver registered, since it lives exactly as long as notifications can be checked.
+//
+// When only notifications from the selected applications are checked, the service only
+// subscribes to those packages, so the system doesn't wake up the process for the rest.
 public class NotificationService extends AccessibilityService {
 
     public static final String SERVICE_NAME = "com.sndurkin.notificationcheck/com.sndurkin.notificationcheck.NotificationService";
 
     private boolean isInit = false;
+    private boolean isReceiverRegistered = false;
+
+    // The connected service, if there is one; it's only used on the main thread.
+    private static NotificationService instance;
 
     @Override
     public void onAccessibilityEvent(AccessibilityEvent event) {
         //Log.d("NotificationCheck", "Notification received from " + event.getPackageName() + " at " + event.getEventTime() + ": " + event.getText());
         if(event.getEventType() == AccessibilityEvent.TYPE_NOTIFICATION_STATE_CHANGED) {
-            ScreenOnReceiver.getInstance().addNotificationEvent(event.getPackageName().toString());
+            // Toasts fire the same event type, but only a real notification carries its
+            // Notification as the parcelable data.
+            if(!(event.getParcelableData() instanceof Notification)) {
+                Metrics.getInstance().droppedToasts.incrementAndGet();
+                return;
+            }
+
+            // The package name is looked up without copying it; only a package that's never
+            // been seen before gets a String of its own.
+            CharSequence packageName = event.getPackageName();
+            TraceLog.notification(packageName, event.getEventTime());
+            ScreenOnReceiver.getInstance().addNotificationEvent(this, PackageIds.getInstance().intern(packageName), event.getEventTime());
         }
     }
 
@@ -26,11 +54,57 @@ public class NotificationService extends AccessibilityService {
         if (isInit) {
             return;
         }
+        instance = this;
+
+        // Incoming events are checked against the rules as they arrive, so make
+        // sure they're ready before the first one does.
+        updateServiceInfo(RuleTableMonitor.getRules(this));
+        DeviceState.get(this);
+        TraceLog.init(this);
+        ScreenOnReceiver.getInstance().restoreNotificationEvents(this);
+
+        if(!isReceiverRegistered) {
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_SCREEN_ON);
+            filter.addAction(Intent.ACTION_SCREEN_OFF);
+            registerReceiver(ScreenOnReceiver.getInstance(), filter);
+            isReceiverRegistered = true;
+        }
+        isInit = true;
+    }
+
+    @Override
+    public void onDestroy() {
+        if(isReceiverRegistered) {
+            unregisterReceiver(ScreenOnReceiver.getInstance());
+            isReceiverRegistered = false;
+        }
+        if(instance == this) {
+            instance = null;
+        }
+        super.onDestroy();
+    }
+
+    // Resubscribes the connected service, if there is one, when the rules change. This must
+    // be called on the main thread.
+    static void onRulesChanged(RuleTable rules) {
+        if(instance != null) {
+            instance.updateServiceInfo(rules);
+        }
+    }
+
+    private void updateServiceInfo(RuleTable rules) {
         AccessibilityServiceInfo info = new AccessibilityServiceInfo();
         info.eventTypes = AccessibilityEvent.TYPE_NOTIFICATION_STATE_CHANGED;
         info.feedbackType = AccessibilityServiceInfo.FEEDBACK_GENERIC;
+
+        // An empty list means every package to the system, so if nothing is selected we
+        // still subscribe to everything and let the rules drop the events.
+        List<String> includedPackages = rules.getIncludedPackages();
+        if(includedPackages != null && !includedPackages.isEmpty()) {
+            info.packageNames = includedPackages.toArray(new String[includedPackages.size()]);
+        }
         setServiceInfo(info);
-        isInit = true;
     }
 
     @Override
@@ -0,0 +1,78 @@
+package com.sndurkin.notificationcheck;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+
+// This receiver keeps the AppCatalog up to date as applications are installed, updated
+// and removed, so it never has to be rebuilt from scratch, and drops it when the locale
+// changes, since the labels in it are in the old language. Reading and writing the
+// catalog is file I/O, so it's done on the catalog's worker thread rather than here.
+public class PackageChangeReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if(Intent.ACTION_LOCALE_CHANGED.equals(intent.getAction())) {
+            final AppCatalog catalog = AppCatalog.getInstance(context);
+            catalog.execute(new Runnable() {
+                @Override
+                public void run() {
+                    catalog.invalidate();
+                }
+            });
+            return;
+        }
+
+        Uri data = intent.getData();
+        if(data == null) {
+            return;
+        }
+        final String packageName = data.getSchemeSpecificPart();
+        AppIconCache.invalidate(packageName);
+
+        final boolean removed = Intent.ACTION_PACKAGE_REMOVED.equals(intent.getAction());
+        if(removed && intent.getBooleanExtra(Intent.EXTRA_REPLACING, false)) {
+            // The package is being updated, which is followed by PACKAGE_ADDED.
+            return;
+        }
+
+        final AppCatalog catalog = AppCatalog.getInstance(context);
+        final PackageManager pm = context.getPackageManager();
+        catalog.execute(new Runnable() {
+            @Override
+            public void run() {
+                update(catalog, pm, packageName, removed);
+            }
+        });
+    }
+
+    private static void update(AppCatalog catalog, PackageManager pm, String packageName, boolean removed) {
+        if(!catalog.load()) {
+            // There's no catalog yet; this package will be picked up once it's built.
+            return;
+        }
+
+        boolean changed;
+        if(removed) {
+            changed = catalog.remove(packageName);
+        }
+        else {
+            try {
+                // PACKAGE_CHANGED is also sent whenever one of the application's components
+                // is enabled or disabled, which leaves its entry as it is.
+                ApplicationInfo appInfo = pm.getApplicationInfo(packageName, 0);
+                changed = !catalog.isUpToDate(appInfo) && catalog.put(AppCatalog.createEntry(pm, appInfo));
+            }
+            catch(PackageManager.NameNotFoundException e) {
+                changed = catalog.remove(packageName);
+            }
+        }
+        if(changed) {
+            catalog.saveLater();
+        }
+    }
+
+}
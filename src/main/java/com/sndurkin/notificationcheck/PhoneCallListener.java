@@ -4,16 +4,24 @@ import android.telephony.PhoneStateListener;
 import android.telephony.TelephonyManager;
 import android.util.Log;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 // This class listens for phone state changes and fires handlers for when
 // a phone call is answered or missed. It's used by ScreenOnReceiver to
 // make better decisions about when to vibrate when the screen is turned on.
+//
+// Observers may be added from any thread, including from inside a callback. They're kept
+// in a copy-on-write array, so dispatching iterates over a snapshot without locking or
+// allocating. They can only be added while a call is ringing and are taken all at once
+// when it ends, so each of them is called exactly once, for that call.
 public class PhoneCallListener extends PhoneStateListener {
 
-    private boolean isPhoneRinging = false;
-    private List<Observer> observers = new ArrayList<Observer>();
+    private static final Observer[] NO_OBSERVERS = new Observer[0];
+    // Held instead of the one-shot observers while no call is ringing.
+    private static final Observer[] NOT_RINGING = new Observer[0];
+
+    private volatile boolean isPhoneRinging = false;
+    private final AtomicReference<Observer[]> oneShotObservers = new AtomicReference<Observer[]>(NOT_RINGING);
 
     private static PhoneCallListener instance = new PhoneCallListener();
 
@@ -28,43 +36,75 @@ public class PhoneCallListener extends PhoneStateListener {
     @Override
     public void onCallStateChanged(int state, String incomingNumber) {
         super.onCallStateChanged(state, incomingNumber);
+        TraceLog.callState(state);
 
         switch(state) {
             case TelephonyManager.CALL_STATE_RINGING:
+                oneShotObservers.compareAndSet(NOT_RINGING, NO_OBSERVERS);
                 isPhoneRinging = true;
                 //Log.d("NotificationCheck", "CALL_STATE_RINGING");
                 break;
             case TelephonyManager.CALL_STATE_OFFHOOK:
                 if(isPhoneRinging) {
-                    for(Observer observer : observers) {
-                        observer.onCallAnswered();
-                    }
+                    isPhoneRinging = false;
+                    dispatch(true);
                 }
-                isPhoneRinging = false;
                 //Log.d("NotificationCheck", "CALL_STATE_RINGING");
                 break;
             case TelephonyManager.CALL_STATE_IDLE:
                 if(isPhoneRinging) {
-                    for(Observer observer : observers) {
-                        observer.onCallMissed();
-                    }
+                    isPhoneRinging = false;
+                    dispatch(false);
                 }
-                isPhoneRinging = false;
                 //Log.d("NotificationCheck", "CALL_STATE_IDLE");
                 break;
         }
     }
 
-    public boolean isPhoneRinging() {
-        return isPhoneRinging;
+    private void dispatch(boolean answered) {
+        Observer[] snapshot = oneShotObservers.getAndSet(NOT_RINGING);
+        for(int i = 0; i < snapshot.length; ++i) {
+            notify(snapshot[i], answered);
+        }
+    }
+
+    private static void notify(Observer observer, boolean answered) {
+        if(answered) {
+            observer.onCallAnswered();
+        }
+        else {
+            observer.onCallMissed();
+        }
     }
 
-    public void addObserver(Observer observer) {
-        observers.add(observer);
+    // Adds an observer which is only called when the call that's ringing is answered or
+    // missed. Returns false, without adding it, if no call is ringing; that's decided
+    // atomically with the call ending, so the observer can never be left waiting for
+    // another call. Adding one that's already waiting does nothing and returns true.
+    public boolean addOneShotObserver(Observer observer) {
+        while(true) {
+            Observer[] current = oneShotObservers.get();
+            if(current == NOT_RINGING) {
+                return false;
+            }
+            Observer[] updated = add(current, observer);
+            if(updated == current || oneShotObservers.compareAndSet(current, updated)) {
+                return true;
+            }
+        }
     }
 
-    public void removeObserver(Observer observer) {
-        observers.remove(observer);
+    // Returns a copy of the array with the observer added, or the same array if it's already in there.
+    private static Observer[] add(Observer[] current, Observer observer) {
+        for(Observer existing : current) {
+            if(existing == observer) {
+                return current;
+            }
+        }
+        Observer[] updated = new Observer[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = observer;
+        return updated;
     }
 
     interface Observer {
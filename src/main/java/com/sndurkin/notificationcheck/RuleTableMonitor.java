@@ -0,0 +1,88 @@
+package com.sndurkin.notificationcheck;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.sndurkin.notificationcheck.core.AppRule;
+import com.sndurkin.notificationcheck.core.PackageIds;
+import com.sndurkin.notificationcheck.core.RuleTable;
+import com.sndurkin.notificationcheck.core.WhatToCheck;
+
+// This keeps the current RuleTable, compiled from the pref_what, pref_notifications,
+// pref_quiet_hours, pref_min_interval and pref_rules preferences. It's only recompiled
+// when one of those preferences changes, and the new instance is swapped in as a whole,
+// so the notification and SCREEN_ON paths never have to parse the preferences or lock anything.
+public class RuleTableMonitor {
+
+    private static volatile RuleTable current;
+
+    // SharedPreferences only keeps a weak reference to its listeners, so we hold on to it here.
+    private static SharedPreferences.OnSharedPreferenceChangeListener preferenceListener;
+
+    private RuleTableMonitor() {
+    }
+
+    public static RuleTable getRules(Context context) {
+        RuleTable rules = current;
+        if(rules == null) {
+            rules = init(context);
+        }
+        return rules;
+    }
+
+    private static synchronized RuleTable init(Context context) {
+        if(current == null) {
+            SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext());
+            preferenceListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences preferences, String key) {
+                    if("pref_what".equals(key) || "pref_notifications".equals(key) || "pref_quiet_hours".equals(key)
+                            || "pref_min_interval".equals(key) || "pref_rules".equals(key)) {
+                        RuleTable rules = fromPreferences(preferences);
+                        current = rules;
+                        ScreenOnReceiver.getInstance().onRulesChanged(rules);
+                        NotificationService.onRulesChanged(rules);
+                    }
+                }
+            };
+            preferences.registerOnSharedPreferenceChangeListener(preferenceListener);
+            current = fromPreferences(preferences);
+        }
+        return current;
+    }
+
+    private static RuleTable fromPreferences(SharedPreferences preferences) {
+        WhatToCheck whatToCheck = WhatToCheck.fromValue(preferences.getString("pref_what", WhatToCheck.DEFAULT_VALUE));
+
+        // pref_quiet_hours is stored as "startMinute-endMinute", or empty if there aren't any.
+        int quietStartMinute = -1;
+        int quietEndMinute = -1;
+        String quietHours = preferences.getString("pref_quiet_hours", "");
+        int separator = quietHours.indexOf('-');
+        if(separator > 0) {
+            try {
+                quietStartMinute = Integer.parseInt(quietHours.substring(0, separator));
+                quietEndMinute = Integer.parseInt(quietHours.substring(separator + 1));
+            }
+            catch(NumberFormatException e) {
+                quietStartMinute = quietEndMinute = -1;
+            }
+        }
+
+        // pref_min_interval is stored in minutes.
+        long minIntervalMillis = 0;
+        try {
+            minIntervalMillis = Long.parseLong(preferences.getString("pref_min_interval", "0")) * 60 * 1000;
+        }
+        catch(NumberFormatException e) {
+            // Fall back to no minimum interval.
+        }
+
+        AppRule baseRule = new AppRule(true, AppRule.PRIORITY_NORMAL, minIntervalMillis, quietStartMinute, quietEndMinute);
+        return RuleTable.compile(PackageIds.getInstance(), whatToCheck,
+                                 NotificationListPreference.readSelectedPackages(preferences), baseRule,
+                                 AppRule.decodeAll(preferences.getString("pref_rules", "")));
+    }
+
+}
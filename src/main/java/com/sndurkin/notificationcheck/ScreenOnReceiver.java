@@ -3,22 +3,71 @@ package com.sndurkin.notificationcheck;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
-import android.media.AudioManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
 import android.os.SystemClock;
 import android.os.Vibrator;
-import android.preference.PreferenceManager;
 import android.util.Log;
 
-import java.util.ArrayList;
-import java.util.List;
+import com.sndurkin.notificationcheck.core.AppRule;
+import com.sndurkin.notificationcheck.core.EventJournal;
+import com.sndurkin.notificationcheck.core.Metrics;
+import com.sndurkin.notificationcheck.core.NotificationEventStore;
+import com.sndurkin.notificationcheck.core.NotificationTracker;
+import com.sndurkin.notificationcheck.core.PackageIds;
+import com.sndurkin.notificationcheck.core.RuleTable;
+import com.sndurkin.notificationcheck.core.ScreenSession;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 // This is where most of the logic for the application lives; when the SCREEN_ON event
 // is fired, the phone vibrates if there are any notifications.
+//
+// The broadcasts themselves are received on the main thread, but everything that happens
+// on SCREEN_ON (checking the DeviceState and the rules, and vibrating) is done on a
+// dedicated background thread so it never competes with the display turning on.
 public class ScreenOnReceiver extends BroadcastReceiver {
 
-    private boolean missedPhoneCall = false;
-    private List<String> eventPackages = new ArrayList<String>();
+    // If a SCREEN_ON couldn't be handled within this time, it's too late to vibrate.
+    private static final long SCREEN_ON_TIMEOUT_MILLIS = 2000;
+
+    private static final long[] HIGH_PRIORITY_PATTERN = { 0, 500, 200, 500 };
+
+    private static final int MSG_SCREEN_ON = 1;
+    private static final int MSG_DRAIN_EVENTS = 2;
+    private static final int MSG_RULES_CHANGED = 3;
+    private static final int MSG_RESTORE_EVENTS = 4;
+
+    private static final String JOURNAL_FILE_NAME = "pending_events.journal";
+
+    // The background thread is the tracker's consumer.
+    private final NotificationTracker tracker = new NotificationTracker();
+    // Screen transitions are debounced on the main thread, before anything is handed over.
+    private final ScreenSession session = new ScreenSession(tracker, 0);
+    private final Metrics metrics = Metrics.getInstance();
+
+    private final Handler handler;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean journalOpened = new AtomicBoolean(false);
+
+    private final PhoneCallListener.Observer callObserver = new PhoneCallListener.Observer() {
+        @Override
+        public void onCallMissed() {
+            session.onCallMissed();
+        }
+
+        @Override
+        public void onCallAnswered() {
+            session.onCallAnswered();
+            scheduleDrain();
+        }
+    };
 
     private static ScreenOnReceiver instance = new ScreenOnReceiver();
 
@@ -28,109 +77,186 @@ public class ScreenOnReceiver extends BroadcastReceiver {
 
     private ScreenOnReceiver() {
         super();
+
+        HandlerThread thread = new HandlerThread("ScreenOnReceiver", Process.THREAD_PRIORITY_FOREGROUND);
+        thread.start();
+        handler = new ScreenEventHandler(thread.getLooper());
     }
 
     @Override
-    public synchronized void onReceive(Context context, Intent intent) {
+    public void onReceive(Context context, Intent intent) {
+        long now = SystemClock.uptimeMillis();
         if(intent.getAction().equals(Intent.ACTION_SCREEN_OFF)) {
-            if(!missedPhoneCall) {
-                // Ignore notifications that occurred before the screen shut off; we have
-                // to assume the user has seen these because AFAIK there's no way to tell when
-                // a notification has been dismissed by the user. We don't want to vibrate
-                // for those notifications because they're no longer relevant, so we just
-                // ignore all that occur before the screen shuts off.
-                clearNotificationEvents();
-            }
-            else {
-                missedPhoneCall = false;
+            TraceLog.screenOff(now);
+            if(session.onScreenOff(now)) {
+                scheduleDrain();
             }
             //Log.d("NotificationCheck", "SCREEN_OFF received at " + SystemClock.uptimeMillis());
         }
         else if(intent.getAction().equals(Intent.ACTION_SCREEN_ON)) {
-            SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
-            if(!preferences.getBoolean("pref_active", false)) {
-                clearNotificationEvents();
+            TraceLog.screenOn(now);
+            metrics.screenOns.incrementAndGet();
+            session.setScreenDebounceMillis(DeviceState.get(context).screenDebounceMillis);
+            if(!session.onScreenOn(now)) {
+                metrics.debouncedScreenOns.incrementAndGet();
+                //Log.d("NotificationCheck", "Ignoring SCREEN_ON received at " + now + " right after SCREEN_OFF");
                 return;
             }
 
-            AudioManager am = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
-            if(am.getRingerMode() != AudioManager.RINGER_MODE_SILENT) {
-                // This application is only active when the ringer is set to silent.
-                clearNotificationEvents();
-                return;
-            }
+            // The screen session is captured now, so a SCREEN_OFF that arrives before the
+            // background thread gets to this one is still handled in the right order.
+            handler.obtainMessage(MSG_SCREEN_ON, tracker.getGeneration(), 0, context.getApplicationContext()).sendToTarget();
+        }
+    }
 
-            final PhoneCallListener phoneCallListener = PhoneCallListener.getInstance();
-            if(phoneCallListener.isPhoneRinging()) {
-                // If the screen is turned on because the phone is ringing,
-                // the user probably isn't aware of it because the ringer
-                // is set to silent, so we defer vibration to the next time
-                // the screen is turned on (unless the call is answered).
-                phoneCallListener.addObserver(new PhoneCallListener.Observer() {
-                    @Override
-                    public void onCallMissed() {
-                        missedPhoneCall = true;
-                        phoneCallListener.removeObserver(this);
-                    }
-
-                    @Override
-                    public void onCallAnswered() {
-                        clearNotificationEvents();
-                        phoneCallListener.removeObserver(this);
-                    }
-                });
-                return;
-            }
+    private void handleScreenOn(Context context, int sessionGeneration, long receivedAt) {
+        long startTime = System.nanoTime();
+        metrics.screenOnDelay.record(SystemClock.uptimeMillis() - receivedAt);
 
-            //Log.d("NotificationCheck", "SCREEN_ON received at " + SystemClock.uptimeMillis() + ", checking for notifications");
+        tracker.drain();
+        NotificationEventStore eventStore = tracker.getEventStore();
+        metrics.sessionEvents.record(eventStore.getEventCount() + eventStore.getDroppedCount());
+        boolean vibratePending = tracker.getPendingPriority(sessionGeneration) >= 0;
 
-            boolean atLeastOneNotification = !eventPackages.isEmpty();
-            boolean vibrateForNotifications;
+        if(vibrateIfNeeded(context, sessionGeneration, receivedAt)) {
+            metrics.vibrations.incrementAndGet();
+        }
+        else if(vibratePending) {
+            metrics.suppressedVibrations.incrementAndGet();
+        }
+        metrics.screenOnDecisionTime.record((System.nanoTime() - startTime) / 1000);
+    }
 
-            int monitoringVal = Integer.parseInt(preferences.getString("pref_what", SettingsActivity.PREF_WHAT_DEFAULT));
-            if(monitoringVal == SettingsActivity.WhatToCheck.ALL_NOTIFICATIONS.ordinal()) {
-                //Log.d("NotificationCheck", "Will vibrate for notifications because we're monitoring all notifications");
-                vibrateForNotifications = true;
-            }
-            else {
-                vibrateForNotifications = false;
+    // Returns true if the phone vibrated.
+    private boolean vibrateIfNeeded(Context context, int sessionGeneration, long receivedAt) {
+        DeviceState state = DeviceState.get(context);
+        if(!state.active) {
+            tracker.endSession(sessionGeneration);
+            return false;
+        }
+
+        // If a call is ringing, the session waits for it to be answered or missed. The
+        // observer is only registered if the call is still ringing, and the same one is
+        // used every time, so registering it again on another SCREEN_ON during the same
+        // call does nothing.
+        boolean callRinging = state.ringerSilent && PhoneCallListener.getInstance().addOneShotObserver(callObserver);
+
+        //Log.d("NotificationCheck", "SCREEN_ON received at " + receivedAt + ", checking for notifications");
+
+        // Whether any of the buffered notifications warrant a vibration was mostly decided
+        // as they came in; only minimum intervals, quiet hours and the rate limit are left
+        // to check here.
+        RuleTable rules = RuleTableMonitor.getRules(context);
+        int minuteOfDay = -1;
+        if(rules.isTimeDependent()) {
+            long now = System.currentTimeMillis();
+            minuteOfDay = AppRule.minuteOfDay(now, TimeZone.getDefault().getOffset(now));
+        }
+        int priority = session.decide(sessionGeneration, rules, state.ringerSilent, callRinging,
+                                      SystemClock.elapsedRealtime(), minuteOfDay);
+
+        if(priority >= 0) {
+            if(SystemClock.uptimeMillis() - receivedAt > SCREEN_ON_TIMEOUT_MILLIS) {
+                //Log.d("NotificationCheck", "Not vibrating because SCREEN_ON took too long to handle");
+                return false;
             }
 
-            List<String> selectedPackages = NotificationListPreference.extractListFromPref(preferences.getString("pref_notifications", ""));
-            for(String packageName : eventPackages) {
-                if(monitoringVal != SettingsActivity.WhatToCheck.ALL_NOTIFICATIONS.ordinal()) {
-                    if(selectedPackages.contains(packageName)) {
-                        if(monitoringVal == SettingsActivity.WhatToCheck.ONLY_SELECTED_NOTIFICATIONS.ordinal()) {
-                            //Log.d("NotificationCheck", "Will vibrate for notifications because " + packageName + " was among those selected");
-                            vibrateForNotifications = true;
-                        }
-                    }
-                    else {
-                        if(monitoringVal == SettingsActivity.WhatToCheck.ALL_BUT_SELECTED_NOTIFICATIONS.ordinal()) {
-                            //Log.d("NotificationCheck", "Will vibrate for notifications because " + packageName + " was NOT among those selected");
-                            vibrateForNotifications = true;
-                        }
-                    }
-                }
+            //Log.d("NotificationCheck", "Vibrating with priority " + priority);
+            Vibrator v = (Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE);
+            switch(priority) {
+                case AppRule.PRIORITY_LOW:
+                    v.vibrate(250);
+                    break;
+                case AppRule.PRIORITY_HIGH:
+                    v.vibrate(HIGH_PRIORITY_PATTERN, -1);
+                    break;
+                default:
+                    v.vibrate(500);
+                    break;
             }
+            return true;
+        }
+        return false;
+    }
 
-            // Remove all notifications, so the next check will be for fresh notifications.
-            clearNotificationEvents();
+    // Buffers a notification event and decides right away whether it should cause a
+    // vibration the next time the screen is turned on. This may be called from any thread
+    // and never blocks.
+    // The package is identified by its id in PackageIds.getInstance().
+    public void addNotificationEvent(Context context, int packageId, long eventTime) {
+        long startTime = System.nanoTime();
+        boolean drain = tracker.addEvent(packageId, eventTime, RuleTableMonitor.getRules(context));
+        metrics.ingestionTime.record(System.nanoTime() - startTime);
 
-            if(vibrateForNotifications && atLeastOneNotification) {
-                //Log.d("NotificationCheck", "Vibrating");
-                Vibrator v = (Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE);
-                v.vibrate(500);
-            }
+        if(drain) {
+            scheduleDrain();
+        }
+    }
+
+    private void scheduleDrain() {
+        if(drainScheduled.compareAndSet(false, true)) {
+            handler.sendEmptyMessage(MSG_DRAIN_EVENTS);
+        }
+    }
+
+    // Restores the events that were pending when the process was last killed and starts
+    // journaling new ones. Only the first call does anything.
+    public void restoreNotificationEvents(Context context) {
+        if(journalOpened.compareAndSet(false, true)) {
+            handler.obtainMessage(MSG_RESTORE_EVENTS, context.getApplicationContext()).sendToTarget();
+        }
+    }
+
+    private void handleRestoreEvents(Context context) {
+        EventJournal journal;
+        long bootTime = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+        try {
+            journal = EventJournal.open(new File(context.getFilesDir(), JOURNAL_FILE_NAME), bootTime);
+        }
+        catch(IOException e) {
+            //Log.d("NotificationCheck", "Error opening the event journal: " + e.getMessage());
+            return;
+        }
+
+        RuleTable rules = RuleTableMonitor.getRules(context);
+        for(EventJournal.Entry entry : journal.getRestoredEntries()) {
+            //Log.d("NotificationCheck", "Restoring " + entry.count + " events from " + entry.packageName);
+            tracker.addEvent(PackageIds.getInstance().intern(entry.packageName), entry.lastEventTime, rules);
         }
+        tracker.drain();
+        tracker.setJournal(journal, PackageIds.getInstance());
     }
 
-    public synchronized void addNotificationEvent(String packageName) {
-        eventPackages.add(packageName);
+    // Re-evaluates the buffered events when the user changes which notifications to check
+    // while the screen is off.
+    void onRulesChanged(RuleTable rules) {
+        handler.obtainMessage(MSG_RULES_CHANGED, rules).sendToTarget();
     }
 
-    public synchronized void clearNotificationEvents() {
-        eventPackages.clear();
+    private class ScreenEventHandler extends Handler {
+
+        ScreenEventHandler(Looper looper) {
+            super(looper);
+        }
+
+        @Override
+        public void handleMessage(Message msg) {
+            switch(msg.what) {
+                case MSG_SCREEN_ON:
+                    handleScreenOn((Context) msg.obj, msg.arg1, msg.getWhen());
+                    break;
+                case MSG_DRAIN_EVENTS:
+                    drainScheduled.set(false);
+                    tracker.drain();
+                    break;
+                case MSG_RULES_CHANGED:
+                    tracker.reevaluate((RuleTable) msg.obj);
+                    break;
+                case MSG_RESTORE_EVENTS:
+                    handleRestoreEvents((Context) msg.obj);
+                    break;
+            }
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -15,20 +15,26 @@ import android.preference.PreferenceActivity;
 import android.preference.PreferenceManager;
 import android.provider.Settings;
 import android.util.Log;
+import android.widget.Toast;
+
+import com.sndurkin.notificationcheck.core.Metrics;
+import com.sndurkin.notificationcheck.core.WhatToCheck;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 // This PreferenceActivity is the main activity for the application,
 // as it mostly runs in the background.
 public class SettingsActivity extends PreferenceActivity {
 
-    enum WhatToCheck {
-        ALL_NOTIFICATIONS,
-        ONLY_SELECTED_NOTIFICATIONS,
-        ALL_BUT_SELECTED_NOTIFICATIONS
-    }
-    public static final String PREF_WHAT_DEFAULT = String.valueOf(WhatToCheck.ALL_NOTIFICATIONS.ordinal());
-
     private static final int ACCESSIBILITY_ALERT_DIALOG = 0;
     private static final int HELP_DIALOG = 1;
+    private static final int METRICS_DIALOG = 2;
+
+    private static final String METRICS_FILE_NAME = "metrics.txt";
 
     @Override
     protected void onPostCreate(Bundle savedInstanceState) {
@@ -36,7 +42,6 @@ public class SettingsActivity extends PreferenceActivity {
 
         setupUI();
         launchHelpIfApplicable();
-        startService(new Intent(this, ScreenOnService.class));
     }
 
     @Override
@@ -85,6 +90,10 @@ public class SettingsActivity extends PreferenceActivity {
         int whatToCheck = Integer.parseInt(prefWhatToCheck.getValue().toString());
         prefNotifications.setEnabled(whatToCheck != WhatToCheck.ALL_NOTIFICATIONS.ordinal());
 
+        bindPreferenceSummaryToValue(findPreference("pref_quiet_hours"));
+        bindPreferenceSummaryToValue(findPreference("pref_min_interval"));
+        bindPreferenceSummaryToValue(findPreference("pref_screen_debounce"));
+
         findPreference("pref_help").setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
             @Override
             public boolean onPreferenceClick(Preference preference) {
@@ -92,6 +101,61 @@ public class SettingsActivity extends PreferenceActivity {
                 return true;
             }
         });
+
+        findPreference("pref_metrics").setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+            @Override
+            public boolean onPreferenceClick(Preference preference) {
+                showDialog(METRICS_DIALOG);
+                return true;
+            }
+        });
+        findPreference("pref_metrics_export").setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+            @Override
+            public boolean onPreferenceClick(Preference preference) {
+                exportMetrics();
+                return true;
+            }
+        });
+        findPreference("pref_trace").setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
+            @Override
+            public boolean onPreferenceChange(Preference preference, Object newValue) {
+                TraceLog.setEnabled(SettingsActivity.this, (Boolean) newValue);
+                return true;
+            }
+        });
+        findPreference("pref_metrics_reset").setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+            @Override
+            public boolean onPreferenceClick(Preference preference) {
+                Metrics.getInstance().reset();
+                Toast.makeText(SettingsActivity.this, R.string.pref_metrics_reset_done, Toast.LENGTH_SHORT).show();
+                return true;
+            }
+        });
+    }
+
+    // Writes the current metrics to a file in the application's files directory.
+    private void exportMetrics() {
+        File file = new File(getFilesDir(), METRICS_FILE_NAME);
+        Writer out = null;
+        try {
+            out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            out.write(Metrics.getInstance().report());
+            Toast.makeText(this, String.format(getString(R.string.pref_metrics_export_done), file.getPath()), Toast.LENGTH_LONG).show();
+        }
+        catch(IOException e) {
+            //Log.d("NotificationCheck", "Error exporting the metrics: " + e.getMessage());
+            Toast.makeText(this, R.string.pref_metrics_export_failed, Toast.LENGTH_LONG).show();
+        }
+        finally {
+            if(out != null) {
+                try {
+                    out.close();
+                }
+                catch(IOException e) {
+                    // Nothing more we can do.
+                }
+            }
+        }
     }
 
     // Launches a Help dialog if this is the first run of the application.
@@ -141,38 +205,28 @@ public class SettingsActivity extends PreferenceActivity {
                     })
                     .setNegativeButton(null, null)
                     .create();
+            case METRICS_DIALOG:
+                // The message is filled in by onPrepareDialog() every time it's shown.
+                return new AlertDialog.Builder(this)
+                    .setTitle(R.string.pref_metrics_title)
+                    .setMessage("")
+                    .setPositiveButton(R.string.ok, null)
+                    .create();
             default:
                 return null;
         }
     }
 
-    private boolean isNotificationServiceEnabled(){
-        int accessibilityEnabled = 0;
-        try {
-            accessibilityEnabled = Settings.Secure.getInt(this.getContentResolver(), Settings.Secure.ACCESSIBILITY_ENABLED);
-        }
-        catch (Settings.SettingNotFoundException e) {
-            //Log.d("NotificationCheck", "Error finding setting, default accessibility to not found: " + e.getMessage());
-        }
-
-        if (accessibilityEnabled == 1) {
-            //Log.d("NotificationCheck", "Accessibility is enabled");
-
-            String accessibilityServices = Settings.Secure.getString(getContentResolver(), Settings.Secure.ENABLED_ACCESSIBILITY_SERVICES);
-            //Log.d("NotificationCheck", "Enabled accessibility services: " + accessibilityServices);
-            if (accessibilityServices != null) {
-                for(String accessibilityService : accessibilityServices.split(":")) {
-                    if (accessibilityService.equalsIgnoreCase(NotificationService.SERVICE_NAME)){
-                        return true;
-                    }
-                }
-            }
-        }
-        else {
-            //Log.d("NotificationCheck", "Accessibility is disabled");
+    @Override
+    protected void onPrepareDialog(int id, Dialog dialog) {
+        super.onPrepareDialog(id, dialog);
+        if(id == METRICS_DIALOG) {
+            ((AlertDialog) dialog).setMessage(Metrics.getInstance().report());
         }
+    }
 
-        return false;
+    private boolean isNotificationServiceEnabled() {
+        return DeviceState.get(this).notificationServiceEnabled;
     }
 
     // A preference value change listener that updates the preference's summary to reflect its new value.
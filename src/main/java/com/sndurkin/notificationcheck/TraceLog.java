@@ -0,0 +1,99 @@
+package com.sndurkin.notificationcheck;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+
+import com.sndurkin.notificationcheck.core.TraceRecorder;
+
+import java.io.File;
+import java.io.IOException;
+
+// This is the optional trace of everything the SCREEN_ON decision depends on, recorded
+// into trace.bin in the files directory while pref_trace is on. It can be pulled off the
+// device and replayed with TraceReplay. The record methods are no-ops while it's off and
+// may be called from any thread.
+public class TraceLog {
+
+    private static final String FILE_NAME = "trace.bin";
+    private static final int CAPACITY = 16384;
+
+    private static volatile TraceRecorder recorder;
+
+    private TraceLog() {
+    }
+
+    // Starts recording if pref_trace is on.
+    public static void init(Context context) {
+        setEnabled(context, PreferenceManager.getDefaultSharedPreferences(context).getBoolean("pref_trace", false));
+    }
+
+    public static synchronized void setEnabled(Context context, boolean enabled) {
+        context = context.getApplicationContext();
+        if(enabled == (recorder != null)) {
+            return;
+        }
+
+        if(enabled) {
+            try {
+                recorder = new TraceRecorder(new File(context.getFilesDir(), FILE_NAME), CAPACITY);
+            }
+            catch(IOException e) {
+                //Log.d("NotificationCheck", "Error opening the trace file: " + e.getMessage());
+                return;
+            }
+
+            // Later ringer mode changes are recorded by DeviceState, which listens for them anyway.
+            AudioManager am = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+            ringerMode(am.getRingerMode());
+            DeviceState.get(context);
+        }
+        else {
+            TraceRecorder current = recorder;
+            recorder = null;
+            try {
+                current.close();
+            }
+            catch(IOException e) {
+                //Log.d("NotificationCheck", "Error closing the trace file: " + e.getMessage());
+            }
+        }
+    }
+
+    public static void notification(CharSequence packageName, long eventTime) {
+        TraceRecorder current = recorder;
+        if(current != null) {
+            current.record(TraceRecorder.TYPE_NOTIFICATION, eventTime, 0, packageName);
+        }
+    }
+
+    public static void screenOn(long eventTime) {
+        TraceRecorder current = recorder;
+        if(current != null) {
+            current.record(TraceRecorder.TYPE_SCREEN_ON, eventTime, 0, null);
+        }
+    }
+
+    public static void screenOff(long eventTime) {
+        TraceRecorder current = recorder;
+        if(current != null) {
+            current.record(TraceRecorder.TYPE_SCREEN_OFF, eventTime, 0, null);
+        }
+    }
+
+    public static void callState(int state) {
+        TraceRecorder current = recorder;
+        if(current != null) {
+            current.record(TraceRecorder.TYPE_CALL_STATE, SystemClock.uptimeMillis(), state, null);
+        }
+    }
+
+    public static void ringerMode(int mode) {
+        TraceRecorder current = recorder;
+        if(current != null) {
+            current.record(TraceRecorder.TYPE_RINGER_MODE, SystemClock.uptimeMillis(), mode, null);
+        }
+    }
+
+}